@@ -91,6 +91,7 @@ public class JniDBFactory implements DBFactory {
         NativeCache cache = null;
         NativeComparator comparator=null;
         NativeLogger logger=null;
+        NativeFilterPolicy filterPolicy=null;
         NativeOptions options;
 
         public void init(Options value) {
@@ -119,6 +120,21 @@ public class JniDBFactory implements DBFactory {
                 options.cache(cache);
             }
 
+            if(value instanceof JniOptions) {
+                JniOptions jniOptions = (JniOptions) value;
+                int bitsPerKey = jniOptions.bloomFilterBitsPerKey();
+                if(bitsPerKey>0) {
+                    if(jniOptions.prefixFilterLength()>0) {
+                        filterPolicy = NativeFilterPolicy.prefixBloomFilter(bitsPerKey, jniOptions.prefixFilterLength());
+                    } else if(jniOptions.prefixFilterDelimiter()>=0) {
+                        filterPolicy = NativeFilterPolicy.prefixBloomFilter(bitsPerKey, (byte) jniOptions.prefixFilterDelimiter());
+                    } else {
+                        filterPolicy = new NativeFilterPolicy(bitsPerKey);
+                    }
+                    options.filterPolicy(filterPolicy);
+                }
+            }
+
             final DBComparator userComparator = value.comparator();
             if(userComparator!=null) {
                 comparator = new NativeComparator() {
@@ -157,14 +173,38 @@ public class JniDBFactory implements DBFactory {
             if(logger!=null) {
                 logger.delete();
             }
+            if(filterPolicy!=null) {
+                filterPolicy.delete();
+            }
         }
     }
 
     public DB open(File path, Options options) throws IOException {
+        return open(path, options, 0);
+    }
+
+    /**
+     * Opens the database for loading large amounts of sorted data.  The
+     * database is opened with a write buffer of at least writeBufferSize
+     * bytes.
+     */
+    public BulkLoader openBulkLoader(File path, Options options, long writeBufferSize) throws IOException {
+        JniDB db = open(path, options, writeBufferSize);
+        return new BulkLoader(db, Math.max(writeBufferSize, options.writeBufferSize()));
+    }
+
+    public BulkLoader openBulkLoader(File path, Options options) throws IOException {
+        return openBulkLoader(path, options, BulkLoader.DEFAULT_WRITE_BUFFER_SIZE);
+    }
+
+    private JniDB open(File path, Options options, long minWriteBufferSize) throws IOException {
         NativeDB db=null;
         OptionsResourceHolder holder = new OptionsResourceHolder();
         try {
             holder.init(options);
+            if(holder.options.writeBufferSize() < minWriteBufferSize) {
+                holder.options.writeBufferSize(minWriteBufferSize);
+            }
             db = NativeDB.open(holder.options, path);
         } finally {
             // if we could not open up the DB, then clean up the
@@ -173,7 +213,7 @@ public class JniDBFactory implements DBFactory {
                 holder.close();
             }
         }
-        return new JniDB(db, holder.cache, holder.comparator, holder.logger);
+        return new JniDB(db, holder.cache, holder.comparator, holder.logger, holder.filterPolicy);
     }
 
     public void destroy(File path, Options options) throws IOException {
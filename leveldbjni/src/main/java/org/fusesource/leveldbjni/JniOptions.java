@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni;
+
+import org.iq80.leveldb.Options;
+
+/**
+ * Options which configure features that are specific to the
+ * JNI based implementation of the DB.  Use them in place of
+ * {@link Options} when opening a database with the {@link JniDBFactory}.
+ */
+public class JniOptions extends Options {
+
+    private int bloomFilterBitsPerKey = 0;
+    private int prefixFilterLength = 0;
+    private int prefixFilterDelimiter = -1;
+
+    /**
+     * Enables a bloom filter policy which lets reads of keys that do not
+     * exist skip most of the disk reads.  Around 10 bits per key gives a
+     * false positive rate of about 1%.  Zero disables the filter.
+     */
+    public JniOptions bloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+        if( bloomFilterBitsPerKey < 0 ) {
+            throw new IllegalArgumentException("bloomFilterBitsPerKey cannot be negative");
+        }
+        this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+        return this;
+    }
+
+    public int bloomFilterBitsPerKey() {
+        return bloomFilterBitsPerKey;
+    }
+
+    /**
+     * Makes the bloom filter hash just the first prefixLength bytes of
+     * the keys instead of the whole keys.  Prefix iterators over at least
+     * that many bytes then skip the tables which don't hold the prefix.
+     */
+    public JniOptions prefixFilterLength(int prefixLength) {
+        if( prefixLength < 0 ) {
+            throw new IllegalArgumentException("prefixLength cannot be negative");
+        }
+        this.prefixFilterLength = prefixLength;
+        this.prefixFilterDelimiter = -1;
+        return this;
+    }
+
+    public int prefixFilterLength() {
+        return prefixFilterLength;
+    }
+
+    /**
+     * Makes the bloom filter hash just the key bytes up to and including
+     * the first delimiter byte instead of the whole keys.  Prefix iterators
+     * over a prefix holding the delimiter then skip the tables which don't
+     * hold the prefix.
+     */
+    public JniOptions prefixFilterDelimiter(byte delimiter) {
+        this.prefixFilterDelimiter = delimiter & 0xFF;
+        this.prefixFilterLength = 0;
+        return this;
+    }
+
+    /**
+     * @return the unsigned delimiter byte or -1 if not set.
+     */
+    public int prefixFilterDelimiter() {
+        return prefixFilterDelimiter;
+    }
+}
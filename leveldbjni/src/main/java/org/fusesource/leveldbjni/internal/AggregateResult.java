@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+/**
+ * The totals {@link JniDB#aggregate} computed over a key range.
+ */
+public class AggregateResult {
+
+    private final long count;
+    private final long keyBytes;
+    private final long valueBytes;
+    private final byte[] firstKey;
+    private final byte[] lastKey;
+
+    AggregateResult(long count, long keyBytes, long valueBytes, byte[] firstKey, byte[] lastKey) {
+        this.count = count;
+        this.keyBytes = keyBytes;
+        this.valueBytes = valueBytes;
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * @return the exact number of keys in the range.
+     */
+    public long count() {
+        return count;
+    }
+
+    public long keyBytes() {
+        return keyBytes;
+    }
+
+    /**
+     * @return the total value bytes, or -1 if they were not computed.
+     */
+    public long valueBytes() {
+        return valueBytes;
+    }
+
+    /**
+     * @return the first key of the range, or null if the range is empty
+     *         or the boundary keys were not computed.
+     */
+    public byte[] firstKey() {
+        return firstKey;
+    }
+
+    /**
+     * @return the last key of the range, or null if the range is empty
+     *         or the boundary keys were not computed.
+     */
+    public byte[] lastKey() {
+        return lastKey;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+/**
+ * Selects what {@link JniDB#aggregate} computes beyond the key count and
+ * total key bytes, which are always computed.
+ */
+public class AggregateSpec {
+
+    static final int VALUE_BYTES = 1;
+    static final int BOUNDARY_KEYS = 2;
+
+    private boolean valueBytes = true;
+    private boolean boundaryKeys = true;
+
+    /**
+     * Whether to total the value bytes.  Without it the values are never
+     * read.
+     */
+    public AggregateSpec valueBytes(boolean value) {
+        this.valueBytes = value;
+        return this;
+    }
+
+    public boolean valueBytes() {
+        return valueBytes;
+    }
+
+    /**
+     * Whether to return the first and last keys of the range.
+     */
+    public AggregateSpec boundaryKeys(boolean value) {
+        this.boundaryKeys = value;
+        return this;
+    }
+
+    public boolean boundaryKeys() {
+        return boundaryKeys;
+    }
+
+    int flags() {
+        return (valueBytes ? VALUE_BYTES : 0) | (boundaryKeys ? BOUNDARY_KEYS : 0);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Runs database operations on dedicated worker threads so that callers,
+ * like event loops, are never blocked by disk IO, fsyncs or write stalls.
+ * Reads and writes use separate bounded lanes so that a write stall does
+ * not hold up reads.  When a lane's queue is full the submit fails with a
+ * {@link RejectedExecutionException} which lets the caller apply back
+ * pressure.
+ * </p>
+ * <p>
+ * Every operation returns a {@link Future} and optionally invokes a
+ * {@link Callback} on the worker thread once the operation completes.
+ * </p>
+ */
+public class AsyncDB implements Closeable {
+
+    public interface Callback<T> {
+        void onSuccess(T value);
+        void onFailure(Throwable failure);
+    }
+
+    private final JniDB db;
+    private final ThreadPoolExecutor readers;
+    private final ThreadPoolExecutor writers;
+
+    public AsyncDB(JniDB db) {
+        this(db, Runtime.getRuntime().availableProcessors(), 1, 10000);
+    }
+
+    /**
+     * @param readThreads the number of threads executing reads.
+     * @param writeThreads the number of threads executing writes.
+     * @param queueCapacity the most operations each lane will queue up.
+     */
+    public AsyncDB(JniDB db, int readThreads, int writeThreads, int queueCapacity) {
+        NativeDB.checkArgNotNull(db, "db");
+        this.db = db;
+        this.readers = createLane("leveldbjni reader", readThreads, queueCapacity);
+        this.writers = createLane("leveldbjni writer", writeThreads, queueCapacity);
+    }
+
+    private static ThreadPoolExecutor createLane(final String name, int threads, int queueCapacity) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " " + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public Future<byte[]> getAsync(byte[] key) {
+        return getAsync(key, new ReadOptions(), null);
+    }
+
+    public Future<byte[]> getAsync(final byte[] key, final ReadOptions options, Callback<byte[]> callback) {
+        return submit(readers, new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                return db.get(key, options);
+            }
+        }, callback);
+    }
+
+    public Future<Void> putAsync(byte[] key, byte[] value) {
+        return putAsync(key, value, new WriteOptions(), null);
+    }
+
+    public Future<Void> putAsync(final byte[] key, final byte[] value, final WriteOptions options, Callback<Void> callback) {
+        return submit(writers, new Callable<Void>() {
+            public Void call() throws Exception {
+                db.put(key, value, options);
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Void> deleteAsync(byte[] key) {
+        return deleteAsync(key, new WriteOptions(), null);
+    }
+
+    public Future<Void> deleteAsync(final byte[] key, final WriteOptions options, Callback<Void> callback) {
+        return submit(writers, new Callable<Void>() {
+            public Void call() throws Exception {
+                db.delete(key, options);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Writes the batch.  The batch must not be modified or closed until
+     * the returned future completes.
+     */
+    public Future<Void> writeAsync(final WriteBatch updates, final WriteOptions options, Callback<Void> callback) {
+        return submit(writers, new Callable<Void>() {
+            public Void call() throws Exception {
+                db.write(updates, options);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Reads up to limit entries starting at the first key which is equal
+     * to or after the start key.  A null start key scans from the first
+     * key in the database.
+     */
+    public Future<List<Map.Entry<byte[], byte[]>>> scanAsync(final byte[] start, final int limit, final ReadOptions options, Callback<List<Map.Entry<byte[], byte[]>>> callback) {
+        return submit(readers, new Callable<List<Map.Entry<byte[], byte[]>>>() {
+            public List<Map.Entry<byte[], byte[]>> call() throws Exception {
+                ArrayList<Map.Entry<byte[], byte[]>> rc = new ArrayList<Map.Entry<byte[], byte[]>>();
+                DBIterator iterator = db.iterator(options);
+                try {
+                    if( start==null ) {
+                        iterator.seekToFirst();
+                    } else {
+                        iterator.seek(start);
+                    }
+                    while( rc.size() < limit && iterator.hasNext() ) {
+                        rc.add(iterator.next());
+                    }
+                } finally {
+                    iterator.close();
+                }
+                return rc;
+            }
+        }, callback);
+    }
+
+    private <T> Future<T> submit(ThreadPoolExecutor lane, Callable<T> task, final Callback<T> callback) {
+        FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                if( callback==null ) {
+                    return;
+                }
+                T value;
+                try {
+                    value = get();
+                } catch (ExecutionException e) {
+                    callback.onFailure(e.getCause());
+                    return;
+                } catch (Throwable e) {
+                    callback.onFailure(e);
+                    return;
+                }
+                callback.onSuccess(value);
+            }
+        };
+        lane.execute(future);
+        return future;
+    }
+
+    public int readQueueDepth() {
+        return readers.getQueue().size();
+    }
+
+    public int writeQueueDepth() {
+        return writers.getQueue().size();
+    }
+
+    public long completedReads() {
+        return readers.getCompletedTaskCount();
+    }
+
+    public long completedWrites() {
+        return writers.getCompletedTaskCount();
+    }
+
+    /**
+     * Finishes the queued operations and stops the worker threads.  It
+     * does not close the database.
+     */
+    public void close() {
+        readers.shutdown();
+        writers.shutdown();
+        try {
+            readers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.WriteOptions;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Loads large amounts of sorted data into a database.  The updates are
+ * encoded into large write batches which are written without syncing,
+ * and background compactions are held off while loading.  Memtable
+ * flushes are still let through every half write buffer, and when too
+ * many level 0 files pile up the compactions are briefly resumed, so
+ * the load never runs into leveldb's write stop.  {@link #finish(boolean)}
+ * resumes the compactions and can compact the loaded key range.
+ * </p>
+ * <p>
+ * Create it with {@link org.fusesource.leveldbjni.JniDBFactory#openBulkLoader}
+ * which opens the database with a large write buffer.  A loader must only
+ * be used by one thread, and its batches skip the db's key locks, so
+ * nothing else should write to the db while it loads.
+ * </p>
+ */
+public class BulkLoader implements Closeable {
+
+    public static final long DEFAULT_WRITE_BUFFER_SIZE = 128 * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 4 * 1024 * 1024;
+
+    // Rough memtable overhead of an entry on top of its key and value.
+    private static final int ENTRY_OVERHEAD = 64;
+    // Stay below leveldb's level 0 slowdown (8) and stop (12) triggers.
+    private static final int MAX_LEVEL0_FILES = 8;
+    private static final int RESUME_LEVEL0_FILES = 4;
+
+    public interface ProgressListener {
+        void onProgress(BulkLoader loader);
+    }
+
+    private final JniDB db;
+    private final long flushWindow;
+    private final int batchSize;
+    private final WriteOptions options = new WriteOptions().sync(false);
+    private final EncodedWriteBatch encoded;
+    private final JniWriteBatch batch;
+    private ProgressListener listener;
+
+    private boolean suspended;
+    private boolean finished;
+    private long windowBytes;
+    private byte[] firstKey;
+    private byte[] lastKey;
+    // a copy of the last key put since the last flush, reused between puts.
+    private byte[] pendingKey = new byte[64];
+    private int pendingLength;
+
+    private long count;
+    private long bytes;
+    private final long start = System.nanoTime();
+
+    public BulkLoader(JniDB db, long writeBufferSize) {
+        this(db, writeBufferSize, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param writeBufferSize the write buffer size the db was opened with.
+     * @param batchSize how many bytes of updates to gather in a batch before
+     *        it gets written.
+     */
+    public BulkLoader(JniDB db, long writeBufferSize, int batchSize) {
+        NativeDB.checkArgNotNull(db, "db");
+        this.db = db;
+        this.flushWindow = Math.max(1, writeBufferSize / 2);
+        this.batchSize = batchSize;
+        this.encoded = new EncodedWriteBatch(batchSize + 1024);
+        this.batch = new JniWriteBatch(encoded);
+    }
+
+    public BulkLoader progressListener(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Adds an entry.  The entries should be added in key order.
+     */
+    public void put(byte[] key, byte[] value) throws DBException {
+        if( finished ) {
+            throw new DBException("Finished");
+        }
+        if( !suspended ) {
+            suspendCompactions();
+        }
+        encoded.put(key, value);
+        // callers often reuse their key arrays, so the keys are copied.
+        if( firstKey==null ) {
+            firstKey = key.clone();
+        }
+        if( pendingKey.length < key.length ) {
+            pendingKey = new byte[Math.max(key.length, pendingKey.length * 2)];
+        }
+        System.arraycopy(key, 0, pendingKey, 0, key.length);
+        pendingLength = key.length;
+        count++;
+        bytes += key.length + value.length;
+        windowBytes += key.length + value.length + ENTRY_OVERHEAD;
+        if( encoded.size() >= batchSize ) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the updates gathered so far.
+     */
+    public void flush() throws DBException {
+        if( encoded.count() > 0 ) {
+            db.writeWithoutLocking(batch, options);
+            encoded.clear();
+            lastKey = Arrays.copyOf(pendingKey, pendingLength);
+            if( listener!=null ) {
+                listener.onProgress(this);
+            }
+        }
+        if( windowBytes >= flushWindow ) {
+            windowBytes = 0;
+            letMemtableFlush();
+        }
+    }
+
+    private void letMemtableFlush() {
+        if( !suspended ) {
+            return;
+        }
+        // Suspending queues up behind the pending memtable flush, so it
+        // only returns after the flush is done.
+        resumeCompactions();
+        if( level0Files() >= MAX_LEVEL0_FILES ) {
+            try {
+                while( level0Files() >= RESUME_LEVEL0_FILES ) {
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DBException("Interrupted while waiting for compactions", e);
+            }
+        }
+        suspendCompactions();
+    }
+
+    private int level0Files() {
+        String files = db.getProperty("leveldb.num-files-at-level0");
+        return files==null ? 0 : Integer.parseInt(files.trim());
+    }
+
+    private void suspendCompactions() {
+        try {
+            db.suspendCompactions();
+            suspended = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBException("Interrupted while suspending compactions", e);
+        }
+    }
+
+    private void resumeCompactions() {
+        db.resumeCompactions();
+        suspended = false;
+    }
+
+    /**
+     * Writes the remaining updates and resumes the background compactions.
+     *
+     * @param compact if true the loaded key range gets compacted before
+     *        returning.
+     * @return the database, which can be used as usual from now on.
+     */
+    public JniDB finish(boolean compact) throws DBException {
+        if( !finished ) {
+            flush();
+            batch.close();
+            finished = true;
+            if( suspended ) {
+                resumeCompactions();
+            }
+            if( compact && firstKey!=null ) {
+                db.compactRange(firstKey, lastKey);
+            }
+        }
+        return db;
+    }
+
+    /**
+     * Finishes the load without compacting and closes the database.
+     */
+    public void close() {
+        try {
+            finish(false);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * @return the first key added, or null if none was.
+     */
+    public byte[] firstKey() {
+        return firstKey;
+    }
+
+    /**
+     * @return the last key written to the db, or null if nothing was
+     *         written yet.
+     */
+    public byte[] lastKey() {
+        return lastKey;
+    }
+
+    /**
+     * @return the number of entries added so far.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the key and value bytes added so far.
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    public long elapsedMillis() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    public double entriesPerSecond() {
+        return count * 1000.0 / Math.max(1, elapsedMillis());
+    }
+
+    public double bytesPerSecond() {
+        return bytes * 1000.0 / Math.max(1, elapsedMillis());
+    }
+}
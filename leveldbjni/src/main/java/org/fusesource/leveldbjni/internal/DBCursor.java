@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.iq80.leveldb.DBException;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * A forward cursor over the db which does not allocate objects per entry.
+ * Entries are fetched in batches into a native buffer with
+ * {@link NativeIterator#nextBatch}, and the current key and value are
+ * copied into buffers the caller owns and reuses.
+ * </p>
+ * <pre>
+ *   DBCursor cursor = db.cursor();
+ *   cursor.seekToFirst();
+ *   while( cursor.advance() ) {
+ *       int length = cursor.copyKeyTo(key);
+ *       ...
+ *   }
+ *   cursor.close();
+ * </pre>
+ * <p>
+ * A reverse cursor walks from the largest key to the smallest one with a
+ * single native Prev per entry.
+ * </p>
+ * <p>
+ * A cursor must only be used by one thread.
+ * </p>
+ */
+public class DBCursor implements Closeable {
+
+    private final NativeIterator iterator;
+    private final NativeIterator.Mode mode;
+    private final boolean reverse;
+    private final IteratorBatch batch;
+    private boolean positioned;
+
+    DBCursor(NativeIterator iterator, NativeIterator.Mode mode, boolean reverse) {
+        this.iterator = iterator;
+        this.mode = mode;
+        this.reverse = reverse;
+        this.batch = new IteratorBatch(iterator, mode, reverse);
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    public void close() {
+        batch.delete();
+        iterator.delete();
+    }
+
+    /**
+     * Positions the cursor before the first key at or past the key, or
+     * for a reverse cursor the last key at or before it.
+     */
+    public void seek(byte[] key) throws DBException {
+        reset();
+        try {
+            if( reverse ) {
+                iterator.seekForPrev(key);
+            } else {
+                iterator.seek(key);
+            }
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Positions the cursor before the first entry, which is the largest
+     * key for a reverse cursor.
+     */
+    public void seekToFirst() {
+        reset();
+        if( reverse ) {
+            iterator.seekToLast();
+        } else {
+            iterator.seekToFirst();
+        }
+    }
+
+    private void reset() {
+        batch.reset();
+        positioned = false;
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return false if there are no more entries.
+     */
+    public boolean advance() throws DBException {
+        if( positioned ) {
+            batch.consume();
+            positioned = false;
+        }
+        try {
+            positioned = batch.fill();
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+        return positioned;
+    }
+
+    private void assertPositioned() {
+        if( !positioned ) {
+            throw new IllegalStateException("The cursor is not on an entry");
+        }
+    }
+
+    private void assertHasValue() {
+        assertPositioned();
+        if( mode != NativeIterator.Mode.ENTRIES ) {
+            throw new IllegalStateException("The cursor does not read values");
+        }
+    }
+
+    public int keyLength() {
+        assertPositioned();
+        return batch.keyLength();
+    }
+
+    /**
+     * @return the length of the value, or -1 if the cursor only reads keys.
+     */
+    public int valueLength() {
+        assertPositioned();
+        return batch.valueLength();
+    }
+
+    /**
+     * Copies the key into dest which must have room for
+     * {@link #keyLength()} bytes.
+     *
+     * @return the key length.
+     */
+    public int copyKeyTo(byte[] dest) {
+        return copyKeyTo(dest, 0);
+    }
+
+    public int copyKeyTo(byte[] dest, int offset) {
+        assertPositioned();
+        batch.copyKey(dest, offset);
+        return batch.keyLength();
+    }
+
+    /**
+     * Puts the key into dest at its position.
+     *
+     * @return the key length.
+     */
+    public int copyKeyTo(ByteBuffer dest) {
+        assertPositioned();
+        batch.copyKey(dest);
+        return batch.keyLength();
+    }
+
+    /**
+     * Copies the value into dest which must have room for
+     * {@link #valueLength()} bytes.
+     *
+     * @return the value length.
+     */
+    public int copyValueTo(byte[] dest) {
+        return copyValueTo(dest, 0);
+    }
+
+    public int copyValueTo(byte[] dest, int offset) {
+        assertHasValue();
+        batch.copyValue(dest, offset);
+        return batch.valueLength();
+    }
+
+    /**
+     * Puts the value into dest at its position.
+     *
+     * @return the value length.
+     */
+    public int copyValueTo(ByteBuffer dest) {
+        assertHasValue();
+        batch.copyValue(dest);
+        return batch.valueLength();
+    }
+}
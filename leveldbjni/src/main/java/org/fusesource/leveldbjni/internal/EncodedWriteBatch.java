@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+/**
+ * <p>
+ * Builds a write batch in a java byte array using the same encoding
+ * leveldb uses for its WriteBatch contents, so that building the batch
+ * does not need any JNI calls.  The encoding is:
+ * </p>
+ * <pre>
+ *    sequence: fixed64
+ *    count: fixed32
+ *    records: record*
+ *
+ *    record :=
+ *       kTypeValue varstring varstring |
+ *       kTypeDeletion varstring
+ *    varstring :=
+ *       len: varint32
+ *       data: uint8[len]
+ * </pre>
+ */
+public class EncodedWriteBatch {
+
+    static final int HEADER_SIZE = 12;
+    static final byte TYPE_DELETION = 0x0;
+    static final byte TYPE_VALUE = 0x1;
+
+    private byte[] rep;
+    private int size = HEADER_SIZE;
+    private int count;
+
+    public EncodedWriteBatch() {
+        this(1024);
+    }
+
+    public EncodedWriteBatch(int initialCapacity) {
+        rep = new byte[Math.max(initialCapacity, HEADER_SIZE)];
+    }
+
+    /**
+     * Creates a batch from an exported representation.
+     *
+     * @throws IllegalArgumentException if the representation is malformed.
+     */
+    public EncodedWriteBatch(byte[] rep) {
+        NativeDB.checkArgNotNull(rep, "rep");
+        this.count = iterate(rep, rep.length, null);
+        this.rep = rep.clone();
+        this.size = rep.length;
+    }
+
+    public EncodedWriteBatch put(byte[] key, byte[] value) {
+        NativeDB.checkArgNotNull(key, "key");
+        NativeDB.checkArgNotNull(value, "value");
+        ensureCapacity(1 + 5 + key.length + 5 + value.length);
+        rep[size++] = TYPE_VALUE;
+        writeBytes(key);
+        writeBytes(value);
+        count++;
+        return this;
+    }
+
+    public EncodedWriteBatch delete(byte[] key) {
+        NativeDB.checkArgNotNull(key, "key");
+        ensureCapacity(1 + 5 + key.length);
+        rep[size++] = TYPE_DELETION;
+        writeBytes(key);
+        count++;
+        return this;
+    }
+
+    /**
+     * Appends the updates of the other batch to this batch.
+     */
+    public EncodedWriteBatch append(EncodedWriteBatch other) {
+        NativeDB.checkArgNotNull(other, "other");
+        int length = other.size - HEADER_SIZE;
+        ensureCapacity(length);
+        System.arraycopy(other.rep, HEADER_SIZE, rep, size, length);
+        size += length;
+        count += other.count;
+        return this;
+    }
+
+    /**
+     * Appends the updates of an encoded batch representation.
+     *
+     * @throws IllegalArgumentException if the representation is malformed.
+     */
+    public EncodedWriteBatch append(byte[] other) {
+        NativeDB.checkArgNotNull(other, "other");
+        int added = iterate(other, other.length, null);
+        int length = other.length - HEADER_SIZE;
+        ensureCapacity(length);
+        System.arraycopy(other, HEADER_SIZE, rep, size, length);
+        size += length;
+        count += added;
+        return this;
+    }
+
+    public void clear() {
+        size = HEADER_SIZE;
+        count = 0;
+    }
+
+    /**
+     * @return the number of updates in the batch.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return the number of used bytes of the encoded batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes all the updates in the batch to the handler.
+     */
+    public void iterate(NativeWriteBatch.Handler handler) {
+        NativeDB.checkArgNotNull(handler, "handler");
+        iterate(rep, size, handler);
+    }
+
+    /**
+     * @return a copy of the encoded batch.
+     */
+    public byte[] toByteArray() {
+        byte[] rc = new byte[size];
+        System.arraycopy(rep(), 0, rc, 0, size);
+        return rc;
+    }
+
+    /**
+     * @return the array holding the encoding in its first {@link #size()}
+     *         bytes.  It's only valid until this batch is next modified.
+     */
+    byte[] rep() {
+        // the header's sequence is assigned by the db when writing.
+        for (int i = 0; i < 8; i++) {
+            rep[i] = 0;
+        }
+        rep[8] = (byte) count;
+        rep[9] = (byte) (count >>> 8);
+        rep[10] = (byte) (count >>> 16);
+        rep[11] = (byte) (count >>> 24);
+        return rep;
+    }
+
+    /**
+     * Decodes the records of an encoded batch.  The handler may be null
+     * to just validate the encoding.
+     *
+     * @return the number of records.
+     * @throws IllegalArgumentException if the encoding is malformed.
+     */
+    static int iterate(byte[] rep, int length, NativeWriteBatch.Handler handler) {
+        if( length < HEADER_SIZE ) {
+            throw new IllegalArgumentException("Malformed write batch (too small)");
+        }
+        int[] pos = new int[]{HEADER_SIZE};
+        int found = 0;
+        while( pos[0] < length ) {
+            byte tag = rep[pos[0]++];
+            switch( tag ) {
+                case TYPE_VALUE: {
+                    byte[] key = readBytes(rep, length, pos);
+                    byte[] value = readBytes(rep, length, pos);
+                    if( key==null || value==null ) {
+                        throw new IllegalArgumentException("Bad WriteBatch Put");
+                    }
+                    if( handler!=null ) {
+                        handler.put(key, value);
+                    }
+                    break;
+                }
+                case TYPE_DELETION: {
+                    byte[] key = readBytes(rep, length, pos);
+                    if( key==null ) {
+                        throw new IllegalArgumentException("Bad WriteBatch Delete");
+                    }
+                    if( handler!=null ) {
+                        handler.delete(key);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown WriteBatch tag");
+            }
+            found++;
+        }
+        int count = (rep[8] & 0xFF) | (rep[9] & 0xFF) << 8 | (rep[10] & 0xFF) << 16 | (rep[11] & 0xFF) << 24;
+        if( found != count ) {
+            throw new IllegalArgumentException("WriteBatch has wrong count");
+        }
+        return count;
+    }
+
+    private static byte[] readBytes(byte[] rep, int limit, int[] pos) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if( shift > 28 || pos[0] >= limit ) {
+                return null;
+            }
+            int b = rep[pos[0]++] & 0xFF;
+            length |= (b & 0x7F) << shift;
+            if( (b & 0x80) == 0 ) {
+                break;
+            }
+        }
+        if( length < 0 || length > limit - pos[0] ) {
+            return null;
+        }
+        byte[] rc = new byte[length];
+        System.arraycopy(rep, pos[0], rc, 0, length);
+        pos[0] += length;
+        return rc;
+    }
+
+    private void ensureCapacity(int needed) {
+        if( size + needed > rep.length ) {
+            byte[] next = new byte[Math.max(rep.length * 2, size + needed)];
+            System.arraycopy(rep, 0, next, 0, size);
+            rep = next;
+        }
+    }
+
+    private void writeBytes(byte[] data) {
+        int value = data.length;
+        while( (value & ~0x7F) != 0 ) {
+            rep[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        rep[size++] = (byte) value;
+        System.arraycopy(data, 0, rep, size, data.length);
+        size += data.length;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Coalesces the puts and deletes of concurrent callers into shared write
+ * batches.  A single committer thread takes all the queued updates (up to
+ * maxBatchSize of them, optionally waiting up to maxDelay for more to
+ * arrive), writes them with one {@link JniDB#write(WriteBatch, WriteOptions)}
+ * call, and then completes the futures of all the callers.  With sync
+ * writes this means one fsync is shared by the whole group.
+ * </p>
+ * <p>
+ * All the updates in a group are applied atomically, and the updates
+ * of a single caller are applied in the order they were submitted.
+ * </p>
+ */
+public class GroupCommitWriter implements Closeable {
+
+    private static final Update SHUTDOWN = new Update(null, null);
+
+    private final JniDB db;
+    private final WriteOptions options;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Update> queue = new LinkedBlockingQueue<Update>();
+    private final Thread committer;
+    private final Object submitMutex = new Object();
+    private boolean closed;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong updateCount = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public GroupCommitWriter(JniDB db, WriteOptions options, int maxBatchSize) {
+        this(db, options, maxBatchSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxBatchSize the most updates that get written in one batch.
+     * @param maxDelay how long the committer waits for more updates to
+     *        arrive when the queue is drained before the batch is full.
+     *        Zero only groups the updates which queued up while the
+     *        previous batch was being written.
+     */
+    public GroupCommitWriter(JniDB db, WriteOptions options, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        NativeDB.checkArgNotNull(db, "db");
+        NativeDB.checkArgNotNull(options, "options");
+        if( maxBatchSize <= 0 ) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.db = db;
+        this.options = options;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.committer = new Thread("leveldbjni group commit") {
+            public void run() {
+                commitLoop();
+            }
+        };
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public void put(byte[] key, byte[] value) throws DBException {
+        await(putAsync(key, value));
+    }
+
+    public void delete(byte[] key) throws DBException {
+        await(deleteAsync(key));
+    }
+
+    public Future<Void> putAsync(byte[] key, byte[] value) {
+        NativeDB.checkArgNotNull(key, "key");
+        NativeDB.checkArgNotNull(value, "value");
+        return submit(new Update(key, value));
+    }
+
+    public Future<Void> deleteAsync(byte[] key) {
+        NativeDB.checkArgNotNull(key, "key");
+        return submit(new Update(key, null));
+    }
+
+    private Future<Void> submit(Update update) {
+        // closed is checked under the same lock close() holds while it
+        // queues SHUTDOWN so no update can land behind it.
+        synchronized (submitMutex) {
+            if( closed ) {
+                throw new DBException("Closed");
+            }
+            queue.add(update);
+        }
+        return update;
+    }
+
+    private static void await(Future<Void> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBException("Interrupted while waiting for the commit", e);
+        } catch (ExecutionException e) {
+            if( e.getCause() instanceof DBException ) {
+                throw (DBException) e.getCause();
+            }
+            throw new DBException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops accepting updates, commits the ones already queued and stops
+     * the committer thread.  It does not close the database.
+     */
+    public void close() {
+        synchronized (submitMutex) {
+            if( closed ) {
+                return;
+            }
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitLoop() {
+        ArrayList<Update> batch = new ArrayList<Update>(maxBatchSize);
+        boolean shutdown = false;
+        while( !shutdown ) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                if( maxDelayNanos > 0 ) {
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while( batch.size() < maxBatchSize && !batch.contains(SHUTDOWN) ) {
+                        long remaining = deadline - System.nanoTime();
+                        Update update = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if( update == null ) {
+                            break;
+                        }
+                        batch.add(update);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // only close() stops the committer.
+                continue;
+            }
+            if( batch.remove(SHUTDOWN) ) {
+                shutdown = true;
+                queue.drainTo(batch);
+            }
+            if( !batch.isEmpty() ) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(ArrayList<Update> batch) {
+        Throwable failure = null;
+        try {
+            WriteBatch updates = db.createEncodedWriteBatch();
+            try {
+                for (Update update : batch) {
+                    if( update.value != null ) {
+                        updates.put(update.key, update.value);
+                    } else {
+                        updates.delete(update.key);
+                    }
+                }
+                db.write(updates, options);
+            } finally {
+                updates.close();
+            }
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        long now = System.nanoTime();
+        for (Update update : batch) {
+            long latency = now - update.created;
+            totalLatencyNanos.addAndGet(latency);
+            updateMax(maxLatencyNanos, latency);
+            update.complete(failure);
+        }
+        batchCount.incrementAndGet();
+        updateCount.addAndGet(batch.size());
+        updateMax(largestBatch, batch.size());
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while( value > current && !max.compareAndSet(current, value) ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of updates waiting to be committed.
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public long batchCount() {
+        return batchCount.get();
+    }
+
+    public long updateCount() {
+        return updateCount.get();
+    }
+
+    public long largestBatchSize() {
+        return largestBatch.get();
+    }
+
+    public double averageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) updateCount.get() / batches;
+    }
+
+    /**
+     * @return the average time from submitting an update to its commit.
+     */
+    public long averageLatency(TimeUnit unit) {
+        long updates = updateCount.get();
+        return updates == 0 ? 0 : unit.convert(totalLatencyNanos.get() / updates, TimeUnit.NANOSECONDS);
+    }
+
+    public long maxLatency(TimeUnit unit) {
+        return unit.convert(maxLatencyNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public void resetMetrics() {
+        batchCount.set(0);
+        updateCount.set(0);
+        largestBatch.set(0);
+        totalLatencyNanos.set(0);
+        maxLatencyNanos.set(0);
+    }
+
+    private static class Update implements Future<Void> {
+        final byte[] key;
+        final byte[] value;
+        final long created = System.nanoTime();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable failure;
+
+        Update(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        void complete(Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public Void get() throws InterruptedException, ExecutionException {
+            done.await();
+            return result();
+        }
+
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if( !done.await(timeout, unit) ) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Void result() throws ExecutionException {
+            if( failure != null ) {
+                throw new ExecutionException(failure);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Buffers the entries a {@link NativeIterator} packs with its batch
+ * calls.  The entries go into a native buffer which is freed by
+ * {@link #delete()}.  It starts with room for a small batch and grows,
+ * along with the number of entries fetched at once, while the scan goes
+ * on.  The entry at the head of the batch stays readable until it is
+ * consumed.
+ */
+class IteratorBatch {
+
+    static final int MIN_ENTRIES = 16;
+    static final int MAX_ENTRIES = 1024;
+    // the buffer size reserved per requested entry.
+    private static final int ENTRY_SIZE = 256;
+    private static final int MAX_BUFFER_SIZE = MAX_ENTRIES * 64;
+
+    private final NativeIterator iterator;
+    private final NativeIterator.Mode mode;
+    private final boolean reverse;
+    private NativeBuffer buffer;
+    private ByteBuffer data;
+    private ByteBuffer view;
+    private int buffered;
+    private int entries = MIN_ENTRIES;
+
+    private int keyOffset;
+    private int keyLength;
+    private int valueOffset;
+    private int valueLength;
+
+    IteratorBatch(NativeIterator iterator, NativeIterator.Mode mode, boolean reverse) {
+        this.iterator = iterator;
+        this.mode = mode;
+        this.reverse = reverse;
+    }
+
+    /**
+     * Drops the buffered entries, for when the iterator was moved.
+     */
+    void reset() {
+        buffered = 0;
+        entries = MIN_ENTRIES;
+        if( buffer!=null && buffer.capacity() > MAX_BUFFER_SIZE ) {
+            // don't hold on to the room an oversized entry needed.
+            release();
+        }
+    }
+
+    void delete() {
+        buffered = 0;
+        if( buffer!=null ) {
+            release();
+        }
+    }
+
+    private void release() {
+        buffer.delete();
+        buffer = null;
+        data = null;
+        view = null;
+    }
+
+    /**
+     * Fetches the next batch if no entries are buffered.
+     *
+     * @return false if there are no more entries.
+     */
+    boolean fill() throws NativeDB.DBException {
+        if( buffered > 0 ) {
+            return true;
+        }
+        int size = Math.min(entries * ENTRY_SIZE, MAX_BUFFER_SIZE);
+        if( buffer==null || buffer.capacity() < size ) {
+            allocate(size);
+        }
+        while( true ) {
+            int rc = iterator.batch(buffer, mode, reverse, entries);
+            if( rc >= 0 ) {
+                buffered = rc;
+                entries = Math.min(entries * 2, MAX_ENTRIES);
+                if( rc > 0 ) {
+                    parse(0);
+                }
+                return rc > 0;
+            }
+            // the next entry is larger than the buffer.
+            allocate(-rc);
+        }
+    }
+
+    private void allocate(int size) {
+        if( buffer!=null ) {
+            release();
+        }
+        buffer = NativeBuffer.create(size);
+        ByteBuffer rc = (ByteBuffer) NativeDB.DBJNI.NewDirectByteBuffer(buffer.pointer(), size);
+        if( rc==null ) {
+            buffer.delete();
+            buffer = null;
+            throw new UnsupportedOperationException("JNI access to direct buffers is not supported");
+        }
+        data = rc.order(ByteOrder.nativeOrder());
+        view = rc.duplicate();
+    }
+
+    private void parse(int offset) {
+        keyLength = data.getInt(offset);
+        keyOffset = offset + 4;
+        int next = keyOffset + keyLength;
+        if( mode != NativeIterator.Mode.KEYS_ONLY ) {
+            valueLength = data.getInt(next);
+            valueOffset = next + 4;
+        } else {
+            valueLength = -1;
+            valueOffset = next;
+        }
+    }
+
+    /**
+     * Drops the head entry.
+     */
+    void consume() {
+        buffered--;
+        if( buffered > 0 ) {
+            int next = valueOffset;
+            if( mode == NativeIterator.Mode.ENTRIES ) {
+                next += valueLength;
+            }
+            parse(next);
+        }
+    }
+
+    /**
+     * @return the number of entries fetched but not consumed yet.  The
+     *         native iterator is that many entries past the head.
+     */
+    int buffered() {
+        return buffered;
+    }
+
+    int keyLength() {
+        return keyLength;
+    }
+
+    /**
+     * @return the value length, or -1 in the
+     *         {@link NativeIterator.Mode#KEYS_ONLY} mode.
+     */
+    int valueLength() {
+        return valueLength;
+    }
+
+    byte[] key() {
+        byte[] rc = new byte[keyLength];
+        copyKey(rc, 0);
+        return rc;
+    }
+
+    byte[] value() {
+        byte[] rc = new byte[valueLength];
+        copyValue(rc, 0);
+        return rc;
+    }
+
+    void copyKey(byte[] dest, int offset) {
+        copy(keyOffset, keyLength, dest, offset);
+    }
+
+    void copyKey(ByteBuffer dest) {
+        copy(keyOffset, keyLength, dest);
+    }
+
+    void copyValue(byte[] dest, int offset) {
+        copy(valueOffset, valueLength, dest, offset);
+    }
+
+    void copyValue(ByteBuffer dest) {
+        copy(valueOffset, valueLength, dest);
+    }
+
+    private void copy(int from, int length, byte[] dest, int offset) {
+        view.clear();
+        view.position(from);
+        view.get(dest, offset, length);
+    }
+
+    private void copy(int from, int length, ByteBuffer dest) {
+        view.clear();
+        view.position(from);
+        view.limit(from + length);
+        dest.put(view);
+    }
+}
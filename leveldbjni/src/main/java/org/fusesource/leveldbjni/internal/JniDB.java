@@ -33,6 +33,13 @@ package org.fusesource.leveldbjni.internal;
 
 import org.iq80.leveldb.*;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * @author <a href="http://hiramchirino.com">Hiram Chirino</a>
  */
@@ -42,12 +49,41 @@ public class JniDB implements DB {
     private NativeCache cache;
     private NativeComparator comparator;
     private NativeLogger logger;
+    private NativeFilterPolicy filterPolicy;
+
+    // created on first use since most dbs never need them.
+    private volatile LockStripes locks;
+    private volatile OptimisticTransaction.CommitTable commits;
+
+    /**
+     * Computes the new value of a key for {@link JniDB#computeIfPresent}.
+     */
+    public interface Remapper {
+        /**
+         * @return the new value or null to delete the key.
+         */
+        byte[] apply(byte[] key, byte[] value);
+    }
+
+    public static final long DEFAULT_DELETE_RANGE_BATCH_SIZE = 1024 * 1024;
+
+    /**
+     * Gets notified after each batch of a {@link #deleteRange} is written.
+     */
+    public interface DeleteRangeListener {
+        void onProgress(long deleted);
+    }
 
     public JniDB(NativeDB db, NativeCache cache, NativeComparator comparator, NativeLogger logger) {
+        this(db, cache, comparator, logger, null);
+    }
+
+    public JniDB(NativeDB db, NativeCache cache, NativeComparator comparator, NativeLogger logger, NativeFilterPolicy filterPolicy) {
         this.db = db;
         this.cache = cache;
         this.comparator = comparator;
         this.logger = logger;
+        this.filterPolicy = filterPolicy;
     }
 
     public void close() {
@@ -66,6 +102,10 @@ public class JniDB implements DB {
                 logger.delete();
                 logger = null;
             }
+            if(filterPolicy!=null) {
+                filterPolicy.delete();
+                filterPolicy = null;
+            }
         }
     }
 
@@ -91,6 +131,96 @@ public class JniDB implements DB {
         }
     }
 
+    public boolean exists(byte[] key) throws DBException {
+        return exists(key, new ReadOptions());
+    }
+
+    /**
+     * Checks if the key exists without copying its value into java.
+     */
+    public boolean exists(byte[] key, ReadOptions options) throws DBException {
+        return valueLength(key, options) >= 0;
+    }
+
+    public long valueLength(byte[] key) throws DBException {
+        return valueLength(key, new ReadOptions());
+    }
+
+    /**
+     * @return the length of the key's value, or -1 if the key was not found.
+     */
+    public long valueLength(byte[] key, ReadOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            return db.valueLength(convert(options), key);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    public byte[] get(byte[] key, long offset, int length) throws DBException {
+        return get(key, offset, length, new ReadOptions());
+    }
+
+    /**
+     * Reads just the section of the value which starts at offset and is
+     * at most length bytes long.
+     *
+     * @return the section of the value or null if the key was not found.
+     */
+    public byte[] get(byte[] key, long offset, int length, ReadOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            return db.get(convert(options), key, offset, length);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    public PinnedValue getPinned(byte[] key) throws DBException {
+        return getPinned(key, new ReadOptions());
+    }
+
+    /**
+     * Gets a value without copying it into a java byte array.  The
+     * returned value must be closed once it's no longer needed.
+     *
+     * @return the pinned value or null if the key was not found.
+     */
+    public PinnedValue getPinned(byte[] key, ReadOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            return db.getPinned(convert(options), key);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    public List<byte[]> multiGet(List<byte[]> keys) throws DBException {
+        return Arrays.asList(multiGet(keys.toArray(new byte[keys.size()][]), new ReadOptions()));
+    }
+
+    /**
+     * Gets the values of all the keys with a single JNI call.  The returned
+     * array holds a null for every key that was not found.
+     */
+    public byte[][] multiGet(byte[][] keys, ReadOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            return db.multiGet(convert(options), keys);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
     public DBIterator iterator() {
         return iterator(new ReadOptions());
     }
@@ -102,6 +232,199 @@ public class JniDB implements DB {
         return new JniDBIterator(db.iterator(convert(options)));
     }
 
+    /**
+     * Creates an iterator over the keys from lower (inclusive) up to
+     * upperExclusive.  The bounds are enforced natively so the iterator
+     * just runs out at them, and {@link DBIterator#seekToFirst()} and
+     * {@link DBIterator#seekToLast()} go to the ends of the range.  A null
+     * bound leaves that side of the range open.
+     */
+    public JniDBIterator iterator(ReadOptions options, byte[] lower, byte[] upperExclusive) {
+        return iterator(options, lower, upperExclusive, NativeIterator.Mode.ENTRIES);
+    }
+
+    public JniDBIterator iterator(ReadOptions options, byte[] lower, byte[] upperExclusive, NativeIterator.Mode mode) {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(mode, "mode");
+        return new JniDBIterator(db.iterator(convert(options), lower, upperExclusive), mode);
+    }
+
+    /**
+     * Creates a cursor which scans the db without allocating objects per
+     * entry.
+     */
+    public DBCursor cursor() {
+        return cursor(new ReadOptions());
+    }
+
+    public DBCursor cursor(ReadOptions options) {
+        return cursor(options, null, null, NativeIterator.Mode.ENTRIES);
+    }
+
+    /**
+     * Creates a cursor over the keys from lower (inclusive) up to
+     * upperExclusive which copies the entries as selected by the mode.
+     */
+    public DBCursor cursor(ReadOptions options, byte[] lower, byte[] upperExclusive, NativeIterator.Mode mode) {
+        return cursor(options, lower, upperExclusive, mode, false);
+    }
+
+    /**
+     * Creates a cursor which walks from the largest key to the smallest.
+     */
+    public DBCursor reverseCursor(ReadOptions options) {
+        return cursor(options, null, null, NativeIterator.Mode.ENTRIES, true);
+    }
+
+    public DBCursor cursor(ReadOptions options, byte[] lower, byte[] upperExclusive, NativeIterator.Mode mode, boolean reverse) {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(mode, "mode");
+        NativeIterator iterator = lower==null && upperExclusive==null ?
+                db.iterator(convert(options)) : db.iterator(convert(options), lower, upperExclusive);
+        return new DBCursor(iterator, mode, reverse);
+    }
+
+    /**
+     * Creates an iterator which walks from the largest key to the smallest.
+     * Call {@link DBIterator#seekToFirst()} to start at the largest key, or
+     * {@link DBIterator#seek(byte[])} to start at the last key at or before
+     * a key.
+     */
+    public JniDBIterator descendingIterator() {
+        return descendingIterator(new ReadOptions(), null, null, NativeIterator.Mode.ENTRIES);
+    }
+
+    public JniDBIterator descendingIterator(ReadOptions options, byte[] lower, byte[] upperExclusive, NativeIterator.Mode mode) {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(mode, "mode");
+        NativeIterator iterator = lower==null && upperExclusive==null ?
+                db.iterator(convert(options)) : db.iterator(convert(options), lower, upperExclusive);
+        return new JniDBIterator(iterator, mode, true);
+    }
+
+    /**
+     * Splits the range from lower up to upper into parts holding roughly
+     * the same number of bytes on disk.  A null bound leaves that side open.
+     * The split keys are computed in a single native call which estimates
+     * the sizes from the sstable index blocks.  Keys are treated as big
+     * endian fractions, so the db must use the default bytewise key
+     * ordering.
+     *
+     * @return the boundaries of the parts, starting with lower and ending
+     *         with upper.  Fewer parts are returned if the range can't be
+     *         split further.
+     * @throws IllegalStateException if the db uses a custom comparator.
+     */
+    public List<byte[]> splitRange(byte[] lower, byte[] upper, int parts) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            byte[][] keys = db.splitRange(lower, upper, parts);
+            ArrayList<byte[]> rc = new ArrayList<byte[]>(keys.length + 2);
+            rc.add(lower);
+            rc.addAll(Arrays.asList(keys));
+            rc.add(upper);
+            return rc;
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the exact key count, the total key and value bytes and the
+     * first and last keys of the range from lower up to upper (exclusive)
+     * in a single native pass over the range.  A null bound leaves that
+     * side open.
+     */
+    public AggregateResult aggregate(byte[] lower, byte[] upper, AggregateSpec spec) throws DBException {
+        return aggregate(lower, upper, spec, new ReadOptions());
+    }
+
+    public AggregateResult aggregate(byte[] lower, byte[] upper, AggregateSpec spec, ReadOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            return db.aggregate(convert(options), lower, upper, spec);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Scans the range from lower up to upper in up to splits size balanced
+     * parts on the executor, each part with its own cursor.  All the parts
+     * read from the options' snapshot, or from a snapshot taken for the scan.
+     * Returns when all the parts are done.  The parts are split with
+     * {@link #splitRange}, so the db must use the default bytewise key
+     * ordering.
+     *
+     * @throws IllegalStateException if the db uses a custom comparator.
+     */
+    public void parallelScan(ReadOptions options, byte[] lower, byte[] upper, int splits, ExecutorService executor, ParallelScan.Visitor visitor) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        if( !db.isBytewise() ) {
+            throw new IllegalStateException("Parallel scans are only supported with the bytewise comparator");
+        }
+        new ParallelScan(this).run(options, lower, upper, splits, executor, visitor);
+    }
+
+    /**
+     * Creates an iterator over the keys starting with the prefix.  It's
+     * meant for dbs using the default bytewise key ordering.  When the db
+     * was opened with a prefix bloom filter that covers the prefix, the
+     * tables whose filter does not hold it get skipped.
+     */
+    public JniDBIterator prefixIterator(byte[] prefix) {
+        return prefixIterator(prefix, new ReadOptions());
+    }
+
+    public JniDBIterator prefixIterator(byte[] prefix, ReadOptions options) {
+        NativeDB.checkArgNotNull(prefix, "prefix");
+        byte[] probe = filterPolicy==null ? null : filterPolicy.filterPrefix(prefix);
+        if( probe==null || db==null || !db.isBytewise() ) {
+            return iterator(options, prefix, prefixEnd(prefix));
+        }
+        return new JniDBIterator(db.prefixIterator(convert(options), prefix, prefixEnd(prefix), probe));
+    }
+
+    /**
+     * @return the smallest key greater than all the keys starting with
+     *         the prefix or null if there is none.
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if( prefix[i] != (byte) 0xFF ) {
+                byte[] rc = Arrays.copyOf(prefix, i + 1);
+                rc[i]++;
+                return rc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates an iterator which only copies the keys, or the keys and the
+     * value lengths, out of the db.  Its entries are
+     * {@link JniDBIterator.Entry} objects.
+     */
+    public JniDBIterator iterator(ReadOptions options, NativeIterator.Mode mode) {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(mode, "mode");
+        return new JniDBIterator(db.iterator(convert(options)), mode);
+    }
+
     public void put(byte[] key, byte[] value) throws DBException {
         put(key, value, new WriteOptions());
     }
@@ -118,15 +441,38 @@ public class JniDB implements DB {
         return new JniWriteBatch(new NativeWriteBatch());
     }
 
+    /**
+     * Creates a write batch which is encoded in java, so adding updates
+     * to it does not make any JNI calls.  It's handed to leveldb in a
+     * single copy when it gets written.
+     */
+    public WriteBatch createEncodedWriteBatch() {
+        return new JniWriteBatch(new EncodedWriteBatch());
+    }
+
+    /**
+     * Creates a batch holding the updates of a representation exported
+     * with {@link JniWriteBatch#toByteArray()}.
+     *
+     * @throws IllegalArgumentException if the representation is malformed.
+     */
+    public JniWriteBatch createWriteBatch(byte[] rep) {
+        return new JniWriteBatch(new EncodedWriteBatch(rep));
+    }
+
     public Snapshot put(byte[] key, byte[] value, WriteOptions options) throws DBException {
         if( db==null ) {
             throw new DBException("Closed");
         }
+        NativeDB.checkArgNotNull(key, "key");
+        ReentrantLock lock = locks().lock(key);
         try {
             db.put(convert(options), key, value);
             return null;
         } catch (NativeDB.DBException e) {
             throw new DBException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -134,15 +480,369 @@ public class JniDB implements DB {
         if( db==null ) {
             throw new DBException("Closed");
         }
+        NativeDB.checkArgNotNull(key, "key");
+        ReentrantLock lock = locks().lock(key);
         try {
             db.delete(convert(options), key);
             return null;
         } catch (NativeDB.DBException e) {
             throw new DBException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(ByteBuffer key, ByteBuffer value) throws DBException {
+        put(key, value, new WriteOptions());
+    }
+
+    /**
+     * Stores the remaining bytes of the direct key and value buffers
+     * without copying them through an intermediate native buffer.
+     */
+    public void put(ByteBuffer key, ByteBuffer value, WriteOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(key, "key");
+        ReentrantLock lock = locks().lock(key);
+        try {
+            db.put(convert(options), key, value);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void delete(ByteBuffer key) throws DBException {
+        delete(key, new WriteOptions());
+    }
+
+    public void delete(ByteBuffer key, WriteOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(key, "key");
+        ReentrantLock lock = locks().lock(key);
+        try {
+            db.delete(convert(options), key);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
         }
     }
 
+    public int get(ByteBuffer key, ByteBuffer value) throws DBException {
+        return get(key, value, new ReadOptions());
+    }
+
+    /**
+     * Copies the value of the key into the remaining space of the direct
+     * value buffer and sets its limit to the end of the copied data.
+     *
+     * @return the full length of the value, or -1 if the key was not found.
+     */
+    public int get(ByteBuffer key, ByteBuffer value, ReadOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        try {
+            return db.get(convert(options), key, value);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Combines the key's current value with the operand using the operator
+     * and stores the result.  This is a read-modify-write, not a merge
+     * record: leveldb has no merge operator, so the read, combine and write
+     * happen in one native call while the key's stripe lock is held.  Every
+     * put, delete and batch write of this JniDB takes the same locks, so no
+     * update is lost to them.  {@link #deleteRange} and a {@link BulkLoader}
+     * don't take the locks, and an update racing with them can lose either
+     * side's write.
+     *
+     * @return the new value.
+     */
+    public byte[] update(byte[] key, byte[] operand, UpdateOperator op) throws DBException {
+        return update(key, operand, op, new WriteOptions());
+    }
+
+    public byte[] update(byte[] key, byte[] operand, UpdateOperator op, WriteOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        NativeDB.checkArgNotNull(key, "key");
+        ReentrantLock lock = locks().lock(key);
+        try {
+            return db.update(convert(options), key, operand, op);
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds delta to the 8 byte big endian counter stored at key.
+     *
+     * @return the new counter value.
+     */
+    public long addAndGet(byte[] key, long delta) throws DBException {
+        return UpdateOperator.decode(update(key, UpdateOperator.encode(delta), UpdateOperator.ADD));
+    }
+
+//
+//  Conditional writes.  They are atomic with respect to all other writes as
+//  the keys get locked through a striped lock table which every write path
+//  except deleteRange and bulk loading takes.  The locks are reentrant so
+//  the conditional writes can use the plain ones.
+//
+    /**
+     * Stores the value if the key does not exist.
+     *
+     * @return true if the value was stored.
+     */
+    public boolean putIfAbsent(byte[] key, byte[] value) throws DBException {
+        return compareAndSet(key, null, value, new WriteOptions());
+    }
+
+    /**
+     * Replaces the key's value if it currently equals the expected value.
+     * A null expected value means the key must not exist, and a null value
+     * deletes the key.
+     *
+     * @return true if the key was updated.
+     */
+    public boolean compareAndSet(byte[] key, byte[] expected, byte[] value) throws DBException {
+        return compareAndSet(key, expected, value, new WriteOptions());
+    }
+
+    public boolean compareAndSet(byte[] key, byte[] expected, byte[] value, WriteOptions options) throws DBException {
+        NativeDB.checkArgNotNull(key, "key");
+        ReentrantLock lock = locks().lock(key);
+        try {
+            if( !Arrays.equals(expected, get(key)) ) {
+                return false;
+            }
+            if( value==null ) {
+                delete(key, options);
+            } else {
+                put(key, value, options);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the key's value with the one the remapper computes from it,
+     * if the key exists.  The key stays locked while the remapper runs.
+     *
+     * @return the new value or null if the key did not exist or got deleted.
+     */
+    public byte[] computeIfPresent(byte[] key, Remapper remapper) throws DBException {
+        return computeIfPresent(key, remapper, new WriteOptions());
+    }
+
+    public byte[] computeIfPresent(byte[] key, Remapper remapper, WriteOptions options) throws DBException {
+        NativeDB.checkArgNotNull(key, "key");
+        NativeDB.checkArgNotNull(remapper, "remapper");
+        ReentrantLock lock = locks().lock(key);
+        try {
+            byte[] value = get(key);
+            if( value==null ) {
+                return null;
+            }
+            value = remapper.apply(key, value);
+            if( value==null ) {
+                delete(key, options);
+            } else {
+                put(key, value, options);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores all the values if none of the keys exist.
+     *
+     * @return true if the values were stored.
+     */
+    public boolean putAllIfAbsent(byte[][] keys, byte[][] values) throws DBException {
+        return compareAndSetAll(keys, new byte[keys.length][], values, new WriteOptions());
+    }
+
+    /**
+     * Like {@link #compareAndSet(byte[], byte[], byte[])} for several keys
+     * at once: either all keys match their expected values and all get
+     * updated in one write batch, or nothing changes.
+     *
+     * @return true if the keys were updated.
+     */
+    public boolean compareAndSetAll(byte[][] keys, byte[][] expected, byte[][] values) throws DBException {
+        return compareAndSetAll(keys, expected, values, new WriteOptions());
+    }
+
+    public boolean compareAndSetAll(byte[][] keys, byte[][] expected, byte[][] values, WriteOptions options) throws DBException {
+        NativeDB.checkArgNotNull(keys, "keys");
+        NativeDB.checkArgNotNull(expected, "expected");
+        NativeDB.checkArgNotNull(values, "values");
+        if( keys.length != expected.length || keys.length != values.length ) {
+            throw new IllegalArgumentException("keys, expected and values must have the same length");
+        }
+        int[] stripes = locks().lock(keys);
+        try {
+            byte[][] current = multiGet(keys, new ReadOptions());
+            for (int i = 0; i < keys.length; i++) {
+                if( !Arrays.equals(expected[i], current[i]) ) {
+                    return false;
+                }
+            }
+            JniWriteBatch batch = new JniWriteBatch(new NativeWriteBatch());
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    if( values[i]==null ) {
+                        batch.delete(keys[i]);
+                    } else {
+                        batch.put(keys[i], values[i]);
+                    }
+                }
+                writeWithoutLocking(batch, options);
+            } finally {
+                batch.close();
+            }
+            return true;
+        } finally {
+            locks().unlock(stripes);
+        }
+    }
+
+    /**
+     * Begins an optimistic transaction which reads from a snapshot of the
+     * db taken now.
+     */
+    public OptimisticTransaction beginTransaction() {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        OptimisticTransaction.CommitTable rc = commits;
+        if( rc==null ) {
+            synchronized (this) {
+                rc = commits;
+                if( rc==null ) {
+                    rc = commits = new OptimisticTransaction.CommitTable(64 * 1024);
+                }
+            }
+        }
+        return new OptimisticTransaction(this, rc);
+    }
+
+    LockStripes locks() {
+        LockStripes rc = locks;
+        if( rc==null ) {
+            synchronized (this) {
+                rc = locks;
+                if( rc==null ) {
+                    rc = locks = new LockStripes(256);
+                }
+            }
+        }
+        return rc;
+    }
+
+    /**
+     * Deletes all the keys from start up to end (exclusive).  The range is
+     * walked in native code and deleted in batches, so the keys never get
+     * copied into java.
+     *
+     * @return the number of deleted keys.
+     */
+    public long deleteRange(byte[] start, byte[] end) throws DBException {
+        return deleteRange(start, end, new WriteOptions(), false, null);
+    }
+
+    /**
+     * Deletes all the keys from start up to end (exclusive).  A null start
+     * or end leaves the range open on that side.
+     *
+     * @param compact if true the range is compacted afterwards to reclaim
+     *        the space of the deleted entries.
+     * @param listener if not null gets told the number of keys deleted
+     *        so far after each batch.
+     * @return the number of deleted keys.
+     */
+    public long deleteRange(byte[] start, byte[] end, WriteOptions options, boolean compact, DeleteRangeListener listener) throws DBException {
+        return deleteRange(start, end, options, DEFAULT_DELETE_RANGE_BATCH_SIZE, compact, listener);
+    }
+
+    /**
+     * Like {@link #deleteRange(byte[], byte[], WriteOptions, boolean, DeleteRangeListener)},
+     * but each write deletes at most batchSize bytes of keys.
+     */
+    public long deleteRange(byte[] start, byte[] end, WriteOptions options, long batchSize, boolean compact, DeleteRangeListener listener) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        if( batchSize <= 0 ) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        long total = 0;
+        try {
+            NativeWriteOptions nativeOptions = convert(options);
+            long deleted[] = new long[1];
+            byte[] next = start;
+            do {
+                next = db.deleteRange(nativeOptions, next, end, batchSize, deleted);
+                total += deleted[0];
+                if( listener!=null ) {
+                    listener.onProgress(total);
+                }
+            } while( next!=null );
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+        if( compact ) {
+            db.compactRange(start, end);
+        }
+        return total;
+    }
+
+    /**
+     * Writes the batch while holding the stripe locks of all its keys.
+     */
     public Snapshot write(WriteBatch updates, WriteOptions options) throws DBException {
+        if( db==null ) {
+            throw new DBException("Closed");
+        }
+        final ArrayList<byte[]> keys = new ArrayList<byte[]>();
+        ((JniWriteBatch) updates).iterate(new NativeWriteBatch.Handler() {
+            public void put(byte[] key, byte[] value) {
+                keys.add(key);
+            }
+            public void delete(byte[] key) {
+                keys.add(key);
+            }
+        });
+        int[] stripes = locks().lock(keys.toArray(new byte[keys.size()][]));
+        try {
+            return writeWithoutLocking(updates, options);
+        } finally {
+            locks().unlock(stripes);
+        }
+    }
+
+    /**
+     * Writes the batch for callers which already hold the stripe locks of
+     * its keys, or which own the db exclusively.
+     */
+    Snapshot writeWithoutLocking(WriteBatch updates, WriteOptions options) throws DBException {
         if( db==null ) {
             throw new DBException("Closed");
         }
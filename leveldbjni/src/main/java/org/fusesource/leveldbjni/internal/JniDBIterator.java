@@ -40,17 +40,74 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
+ * <p>
+ * Forward iteration fetches the entries in batches with
+ * {@link NativeIterator#nextBatch}, so a scan takes one JNI call per batch
+ * instead of several per entry.  The batches start small after a seek and
+ * grow while the scan goes on.  The native iterator is ahead of the
+ * logical position while entries are buffered, so the reverse operations
+ * seek it back first.
+ * </p>
+ * <p>
+ * A descending iterator walks the keys from the largest to the smallest,
+ * fetching them in batches as well, so each entry costs a single native
+ * Prev.  Its seekToFirst goes to the largest key and seek goes to the last
+ * key at or before the target.  The hasPrev, peekPrev and prev operations
+ * are only supported on ascending iterators.
+ * </p>
+ *
  * @author <a href="http://hiramchirino.com">Hiram Chirino</a>
  */
 public class JniDBIterator implements DBIterator {
 
+    /**
+     * An entry which also knows the length of its value.  In the
+     * {@link NativeIterator.Mode#KEYS_ONLY} and
+     * {@link NativeIterator.Mode#VALUE_LENGTHS} modes the value is null.
+     */
+    public static class Entry extends AbstractMap.SimpleImmutableEntry<byte[],byte[]> {
+        private final long valueLength;
+
+        Entry(byte[] key, byte[] value, long valueLength) {
+            super(key, value);
+            this.valueLength = valueLength;
+        }
+
+        /**
+         * @return the length of the value, or -1 in the
+         *         {@link NativeIterator.Mode#KEYS_ONLY} mode.
+         */
+        public long valueLength() {
+            return valueLength;
+        }
+    }
+
     private final NativeIterator iterator;
+    private final NativeIterator.Mode mode;
+    private final boolean descending;
+    private final IteratorBatch batch;
 
     JniDBIterator(NativeIterator iterator) {
+        this(iterator, NativeIterator.Mode.ENTRIES);
+    }
+
+    JniDBIterator(NativeIterator iterator, NativeIterator.Mode mode) {
+        this(iterator, mode, false);
+    }
+
+    JniDBIterator(NativeIterator iterator, NativeIterator.Mode mode, boolean descending) {
         this.iterator = iterator;
+        this.mode = mode;
+        this.descending = descending;
+        this.batch = new IteratorBatch(iterator, mode, descending);
+    }
+
+    public boolean isDescending() {
+        return descending;
     }
 
     public void close() {
+        batch.delete();
         iterator.delete();
     }
 
@@ -59,6 +116,11 @@ public class JniDBIterator implements DBIterator {
     }
 
     public void seek(byte[] key) {
+        if( descending ) {
+            seekForPrev(key);
+            return;
+        }
+        discardBatch();
         try {
             iterator.seek(key);
         } catch (NativeDB.DBException e) {
@@ -70,41 +132,118 @@ public class JniDBIterator implements DBIterator {
         }
     }
 
+    /**
+     * Positions the iterator at the last key at or before the key.
+     */
+    public void seekForPrev(byte[] key) {
+        discardBatch();
+        try {
+            iterator.seekForPrev(key);
+        } catch (NativeDB.DBException e) {
+            if( e.isNotFound() ) {
+                throw new NoSuchElementException();
+            } else {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public void seekToFirst() {
-        iterator.seekToFirst();
+        discardBatch();
+        if( descending ) {
+            iterator.seekToLast();
+        } else {
+            iterator.seekToFirst();
+        }
     }
 
     public void seekToLast() {
-        iterator.seekToLast();
+        discardBatch();
+        if( descending ) {
+            iterator.seekToFirst();
+        } else {
+            iterator.seekToLast();
+        }
     }
 
+    private void discardBatch() {
+        batch.reset();
+    }
 
-    public Map.Entry<byte[], byte[]> peekNext() {
-        if(!iterator.isValid()) {
-            throw new NoSuchElementException();
-        }
+    /**
+     * Fetches the next batch of entries if none are buffered.
+     *
+     * @return false if there are no more entries.
+     */
+    private boolean fill() {
         try {
-            return new AbstractMap.SimpleImmutableEntry<byte[],byte[]>(iterator.key(), iterator.value());
+            return batch.fill();
         } catch (NativeDB.DBException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Moves the native iterator back to the logical position.
+     */
+    private void sync() throws NativeDB.DBException {
+        if( descending ) {
+            throw new UnsupportedOperationException("Not supported by descending iterators");
+        }
+        if( batch.buffered() > 0 ) {
+            byte[] key = batch.key();
+            batch.reset();
+            iterator.seek(key);
+        }
+        batch.reset();
+    }
+
+    private Entry readEntry(boolean consume) {
+        byte[] key = batch.key();
+        byte[] value = mode == NativeIterator.Mode.ENTRIES ? batch.value() : null;
+        Entry rc = new Entry(key, value, batch.valueLength());
+        if( consume ) {
+            batch.consume();
+        }
+        return rc;
+    }
+
+    private Entry currentEntry() throws NativeDB.DBException {
+        switch( mode ) {
+            case KEYS_ONLY:
+                return new Entry(iterator.key(), null, -1);
+            case VALUE_LENGTHS:
+                return new Entry(iterator.key(), null, iterator.valueLength());
+            default:
+                byte[] value = iterator.value();
+                return new Entry(iterator.key(), value, value.length);
+        }
+    }
+
+    public Map.Entry<byte[], byte[]> peekNext() {
+        if( !fill() ) {
+            throw new NoSuchElementException();
+        }
+        return readEntry(false);
+    }
+
     public boolean hasNext() {
-        return iterator.isValid();
+        return fill();
     }
 
     public Map.Entry<byte[], byte[]> next() {
-        Map.Entry<byte[], byte[]> rc = this.peekNext();
-        try {
-            iterator.next();
-        } catch (NativeDB.DBException e) {
-            throw new RuntimeException(e);
+        if( !fill() ) {
+            throw new NoSuchElementException();
         }
-        return rc;
+        return readEntry(true);
     }
 
     public boolean hasPrev() {
+        try {
+            sync();
+        } catch (NativeDB.DBException e) {
+            throw new RuntimeException(e);
+        }
         if( !iterator.isValid() ) {
             return false;
         }
@@ -125,6 +264,9 @@ public class JniDBIterator implements DBIterator {
     }
 
     public Map.Entry<byte[], byte[]> peekPrev() {
+        if( descending ) {
+            throw new UnsupportedOperationException("Not supported by descending iterators");
+        }
         try {
             try {
                 return this.prev();
@@ -141,12 +283,22 @@ public class JniDBIterator implements DBIterator {
     }
 
     public Map.Entry<byte[], byte[]> prev() {
+        try {
+            sync();
+        } catch (NativeDB.DBException e) {
+            throw new RuntimeException(e);
+        }
         if(!iterator.isValid()) {
             throw new NoSuchElementException();
         }
         try {
             iterator.prev();
-            return this.peekNext();
+            // read the entry without batching so the native iterator
+            // stays on it.
+            if( !iterator.isValid() ) {
+                throw new NoSuchElementException();
+            }
+            return currentEntry();
         } catch (NativeDB.DBException e) {
             throw new RuntimeException(e);
         }
@@ -32,6 +32,7 @@
 package org.fusesource.leveldbjni.internal;
 
 import org.fusesource.leveldbjni.internal.NativeWriteBatch;
+import org.iq80.leveldb.DBException;
 import org.iq80.leveldb.WriteBatch;
 
 /**
@@ -39,27 +40,137 @@ import org.iq80.leveldb.WriteBatch;
  */
 public class JniWriteBatch implements WriteBatch {
 
-    private final NativeWriteBatch writeBatch;
+    private NativeWriteBatch writeBatch;
+    private final EncodedWriteBatch encoded;
+    private boolean closed;
 
     JniWriteBatch(NativeWriteBatch writeBatch) {
         this.writeBatch = writeBatch;
+        this.encoded = null;
+    }
+
+    /**
+     * Creates a batch which encodes the updates in java and only hands
+     * them to native code when it's written.
+     */
+    JniWriteBatch(EncodedWriteBatch encoded) {
+        this.encoded = encoded;
     }
 
     public void close() {
-        writeBatch.delete();
+        closed = true;
+        if( writeBatch!=null ) {
+            writeBatch.delete();
+            writeBatch = null;
+        }
+    }
+
+    private void assertOpen() {
+        if( closed ) {
+            throw new DBException("Closed");
+        }
     }
 
     public WriteBatch put(byte[] key, byte[] value) {
-        writeBatch.put(key, value);
+        assertOpen();
+        if( encoded!=null ) {
+            encoded.put(key, value);
+        } else {
+            writeBatch.put(key, value);
+        }
         return this;
     }
 
     public WriteBatch delete(byte[] key) {
-        writeBatch.delete(key);
+        assertOpen();
+        if( encoded!=null ) {
+            encoded.delete(key);
+        } else {
+            writeBatch.delete(key);
+        }
         return this;
     }
 
+    /**
+     * Appends the updates of the other batch to this batch without
+     * marshalling the keys and values again.
+     */
+    public JniWriteBatch append(JniWriteBatch other) throws DBException {
+        assertOpen();
+        NativeDB.checkArgNotNull(other, "other");
+        other.assertOpen();
+        if( encoded!=null ) {
+            if( other.encoded!=null ) {
+                encoded.append(other.encoded);
+            } else {
+                encoded.append(other.toByteArray());
+            }
+        } else {
+            if( other.encoded!=null ) {
+                writeBatch.append(other.encoded);
+            } else {
+                writeBatch.append(other.writeBatch);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Passes all the updates in the batch to the handler.
+     */
+    public void iterate(NativeWriteBatch.Handler handler) throws DBException {
+        assertOpen();
+        if( encoded!=null ) {
+            encoded.iterate(handler);
+        } else {
+            try {
+                writeBatch.iterate(handler);
+            } catch (NativeDB.DBException e) {
+                throw new DBException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of updates in the batch.
+     */
+    public int count() {
+        assertOpen();
+        return encoded!=null ? encoded.count() : writeBatch.count();
+    }
+
+    /**
+     * @return the size of the batch's encoded representation.
+     */
+    public long approximateSize() {
+        assertOpen();
+        return encoded!=null ? encoded.size() : writeBatch.approximateSize();
+    }
+
+    /**
+     * @return the batch's encoded representation.  It can be turned back
+     *         into a batch with {@link JniDB#createWriteBatch(byte[])}.
+     */
+    public byte[] toByteArray() throws DBException {
+        assertOpen();
+        if( encoded!=null ) {
+            return encoded.toByteArray();
+        }
+        try {
+            return writeBatch.toByteArray();
+        } catch (NativeDB.DBException e) {
+            throw new DBException(e.getMessage(), e);
+        }
+    }
+
     public NativeWriteBatch writeBatch() {
+        assertOpen();
+        if( encoded!=null ) {
+            if( writeBatch==null ) {
+                writeBatch = new NativeWriteBatch();
+            }
+            writeBatch.setContents(encoded);
+        }
         return writeBatch;
     }
 }
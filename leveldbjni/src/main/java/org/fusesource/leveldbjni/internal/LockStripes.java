@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed table of locks which keys are hashed onto, used to serialize
+ * the writes and read-modify-write operations on a key.
+ */
+class LockStripes {
+
+    private final ReentrantLock[] locks;
+
+    LockStripes(int count) {
+        int size = 1;
+        while( size < count ) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    int stripe(byte[] key) {
+        return spread(Arrays.hashCode(key));
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer the same way as the
+     * equivalent array, so both forms of a key share a stripe.
+     */
+    int stripe(ByteBuffer key) {
+        int h = 1;
+        for (int i = key.position(); i < key.limit(); i++) {
+            h = 31 * h + key.get(i);
+        }
+        return spread(h);
+    }
+
+    private int spread(int h) {
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & (locks.length - 1);
+    }
+
+    /**
+     * Locks the stripes of all the keys.  Each stripe is locked once and
+     * in index order, so callers locking overlapping key sets can't deadlock.
+     *
+     * @return the locked stripes to pass to {@link #unlock(int[])}.
+     */
+    int[] lock(byte[][] keys) {
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = stripe(keys[i]);
+        }
+        Arrays.sort(stripes);
+        int count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if( count == 0 || stripes[count - 1] != stripes[i] ) {
+                stripes[count++] = stripes[i];
+            }
+        }
+        int[] rc = new int[count];
+        System.arraycopy(stripes, 0, rc, 0, count);
+        int locked = 0;
+        try {
+            for (; locked < rc.length; locked++) {
+                locks[rc[locked]].lock();
+            }
+        } finally {
+            if( locked < rc.length ) {
+                while( --locked >= 0 ) {
+                    locks[rc[locked]].unlock();
+                }
+            }
+        }
+        return rc;
+    }
+
+    void unlock(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    ReentrantLock lock(byte[] key) {
+        ReentrantLock lock = locks[stripe(key)];
+        lock.lock();
+        return lock;
+    }
+
+    ReentrantLock lock(ByteBuffer key) {
+        ReentrantLock lock = locks[stripe(key)];
+        lock.lock();
+        return lock;
+    }
+}
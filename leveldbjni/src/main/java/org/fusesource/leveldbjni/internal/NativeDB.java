@@ -38,6 +38,10 @@ import org.fusesource.hawtjni.runtime.Library;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
 
 import static org.fusesource.hawtjni.runtime.ArgFlag.*;
 import static org.fusesource.hawtjni.runtime.ClassFlag.CPP;
@@ -74,6 +78,15 @@ public class NativeDB extends NativeObject {
                 String name,
                 String signature);
 
+        @JniMethod(flags={JNI, POINTER_RETURN}, cast="void *")
+        public static final native long GetDirectBufferAddress(
+                Object buffer);
+
+        @JniMethod(flags={JNI}, cast="jobject")
+        public static final native Object NewDirectByteBuffer(
+                @JniArg(cast="void *") long address,
+                long capacity);
+
         @JniMethod(flags={CPP_DELETE})
         static final native void delete(
                 long self
@@ -115,12 +128,108 @@ public class NativeDB extends NativeObject {
                 @JniArg(cast="std::string *") long value
                 );
 
+        @JniMethod(copy="leveldb::Status", accessor = "leveldbjni_get_into")
+        static final native long GetInto(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options,
+                @JniArg(flags={BY_VALUE, NO_OUT}) NativeSlice key,
+                @JniArg(cast="char *") long dest,
+                @JniArg(cast="size_t") long offset,
+                @JniArg(cast="size_t") long capacity,
+                @JniArg(cast="jlong *", flags={NO_IN}) long[] length
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor = "leveldbjni_get_section")
+        static final native long GetSection(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options,
+                @JniArg(flags={BY_VALUE, NO_OUT}) NativeSlice key,
+                @JniArg(cast="size_t") long offset,
+                @JniArg(cast="size_t") long length,
+                @JniArg(cast="std::string *") long value
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor = "leveldbjni_delete_range")
+        static final native long DeleteRange(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(cast="const leveldb::Comparator *") long comparator,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeWriteOptions options,
+                @JniArg(flags={NO_OUT}) NativeSlice begin,
+                @JniArg(flags={NO_OUT}) NativeSlice end,
+                @JniArg(cast="size_t") long batchSize,
+                @JniArg(cast="std::string *") long next,
+                @JniArg(cast="jlong *", flags={NO_IN}) long[] result
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor = "leveldbjni_update")
+        static final native long Update(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeWriteOptions options,
+                @JniArg(flags={BY_VALUE, NO_OUT}) NativeSlice key,
+                @JniArg(flags={BY_VALUE, NO_OUT}) NativeSlice operand,
+                int op,
+                @JniArg(cast="std::string *") long result
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor = "leveldbjni_multi_get")
+        static final native long MultiGet(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options,
+                @JniArg(cast="const char *") long keys,
+                @JniArg(cast="const jint *", flags={NO_OUT}) int[] keyLengths,
+                int count,
+                @JniArg(cast="jint *", flags={NO_IN}) int[] valueLengths,
+                @JniArg(cast="std::string *") long values
+                );
+
         @JniMethod(cast="leveldb::Iterator *", flags={CPP_METHOD})
         static final native long NewIterator(
                 long self,
                 @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options
                 );
 
+        @JniMethod(cast="leveldb::Iterator *", accessor="leveldbjni_new_bounded_iterator")
+        static final native long NewBoundedIterator(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(cast="const leveldb::Comparator *") long comparator,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options,
+                @JniArg(flags={NO_OUT}) NativeSlice lower,
+                @JniArg(flags={NO_OUT}) NativeSlice upper
+                );
+
+        @JniMethod(cast="leveldb::Iterator *", accessor="leveldbjni_new_prefix_iterator")
+        static final native long NewPrefixIterator(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(cast="const leveldb::Comparator *") long comparator,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options,
+                @JniArg(flags={NO_OUT}) NativeSlice prefix,
+                @JniArg(flags={NO_OUT}) NativeSlice upper,
+                @JniArg(flags={NO_OUT}) NativeSlice probe
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor="leveldbjni_split_range")
+        static final native long SplitRange(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(cast="const leveldb::Comparator *") long comparator,
+                @JniArg(flags={NO_OUT}) NativeSlice lower,
+                @JniArg(flags={NO_OUT}) NativeSlice upper,
+                int parts,
+                @JniArg(cast="std::string *") long result
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor="leveldbjni_aggregate")
+        static final native long Aggregate(
+                @JniArg(cast="leveldb::DB *") long self,
+                @JniArg(cast="const leveldb::Comparator *") long comparator,
+                @JniArg(flags={NO_OUT, BY_VALUE}) NativeReadOptions options,
+                @JniArg(flags={NO_OUT}) NativeSlice lower,
+                @JniArg(flags={NO_OUT}) NativeSlice upper,
+                int flags,
+                @JniArg(cast="jlong *", flags={NO_IN}) long[] totals,
+                @JniArg(cast="std::string *") long first,
+                @JniArg(cast="std::string *") long last
+                );
+
         @JniMethod(cast="leveldb::Snapshot *", flags={CPP_METHOD})
         static final native long GetSnapshot(
                 long self);
@@ -176,8 +285,11 @@ public class NativeDB extends NativeObject {
         self = 0;
     }
 
-    private NativeDB(long self) {
+    private final long comparator;
+
+    private NativeDB(long self, long comparator) {
         super(self);
+        this.comparator = comparator;
     }
 
     public static class DBException extends IOException {
@@ -222,7 +334,7 @@ public class NativeDB extends NativeObject {
             }
             throw e;
         }
-        return new NativeDB(rc[0]);
+        return new NativeDB(rc[0], options.comparator().pointer());
     }
 
     public void suspendCompactions() {
@@ -259,6 +371,13 @@ public class NativeDB extends NativeObject {
         checkStatus(DBJNI.Put(self, options, keySlice, valueSlice));
     }
 
+    public void put(NativeWriteOptions options, ByteBuffer key, ByteBuffer value) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        checkArgNotNull(value, "value");
+        put(options, NativeSlice.create(key), NativeSlice.create(value));
+    }
+
     public void delete(NativeWriteOptions options, byte[] key) throws DBException {
         checkArgNotNull(options, "options");
         checkArgNotNull(key, "key");
@@ -270,6 +389,94 @@ public class NativeDB extends NativeObject {
         }
     }
 
+    /**
+     * Combines the key's value with the operand and writes it back in a
+     * single native call.  Concurrent updates of the same key must be
+     * serialized by the caller.
+     *
+     * @return the new value.
+     */
+    public byte[] update(NativeWriteOptions options, byte[] key, byte[] operand, UpdateOperator op) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        checkArgNotNull(operand, "operand");
+        checkArgNotNull(op, "op");
+        NativeBuffer keyBuffer = NativeBuffer.create(key);
+        try {
+            NativeBuffer operandBuffer = NativeBuffer.create(operand);
+            try {
+                return update(options, new NativeSlice(keyBuffer), new NativeSlice(operandBuffer), op);
+            } finally {
+                operandBuffer.delete();
+            }
+        } finally {
+            keyBuffer.delete();
+        }
+    }
+
+    private byte[] update(NativeWriteOptions options, NativeSlice keySlice, NativeSlice operandSlice, UpdateOperator op) throws DBException {
+        assertAllocated();
+        NativeStdString result = new NativeStdString();
+        try {
+            checkStatus(DBJNI.Update(self, options, keySlice, operandSlice, op.code, result.pointer()));
+            return result.toByteArray();
+        } finally {
+            result.delete();
+        }
+    }
+
+    /**
+     * Deletes the keys from begin up to end (exclusive) with a single write
+     * holding at most batchSize bytes of keys.  The keys are not copied
+     * into java.  A null begin or end means the range is unbounded on that
+     * side.
+     *
+     * @param deleted gets the number of deleted keys stored at index 0.
+     * @return the key to continue the deletion from or null if there are
+     *         no more keys in the range.
+     */
+    public byte[] deleteRange(NativeWriteOptions options, byte[] begin, byte[] end, long batchSize, long[] deleted) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(deleted, "deleted");
+        if( batchSize <= 0 ) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        NativeBuffer beginBuffer = NativeBuffer.create(begin);
+        try {
+            NativeBuffer endBuffer = NativeBuffer.create(end);
+            try {
+                return deleteRange(options, NativeSlice.create(beginBuffer), NativeSlice.create(endBuffer), batchSize, deleted);
+            } finally {
+                if( endBuffer!=null ) {
+                    endBuffer.delete();
+                }
+            }
+        } finally {
+            if( beginBuffer!=null ) {
+                beginBuffer.delete();
+            }
+        }
+    }
+
+    private byte[] deleteRange(NativeWriteOptions options, NativeSlice beginSlice, NativeSlice endSlice, long batchSize, long[] deleted) throws DBException {
+        assertAllocated();
+        long result[] = new long[2];
+        NativeStdString next = new NativeStdString();
+        try {
+            checkStatus(DBJNI.DeleteRange(self, comparator, options, beginSlice, endSlice, batchSize, next.pointer(), result));
+            deleted[0] = result[0];
+            return result[1]!=0 ? next.toByteArray() : null;
+        } finally {
+            next.delete();
+        }
+    }
+
+    public void delete(NativeWriteOptions options, ByteBuffer key) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        delete(options, NativeSlice.create(key));
+    }
+
     private void delete(NativeWriteOptions options, NativeBuffer keyBuffer) throws DBException {
         delete(options, new NativeSlice(keyBuffer));
     }
@@ -322,6 +529,208 @@ public class NativeDB extends NativeObject {
         }
     }
 
+    /**
+     * Gets the value of the key but leaves it in native memory.  The
+     * returned value must be closed to release that memory.
+     *
+     * @return the pinned value or null if the key was not found.
+     */
+    public PinnedValue getPinned(NativeReadOptions options, byte[] key) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        NativeBuffer keyBuffer = NativeBuffer.create(key);
+        try {
+            return getPinned(options, new NativeSlice(keyBuffer));
+        } finally {
+            keyBuffer.delete();
+        }
+    }
+
+    private PinnedValue getPinned(NativeReadOptions options, NativeSlice keySlice) throws DBException {
+        assertAllocated();
+        NativeStdString result = new NativeStdString();
+        PinnedValue rc = null;
+        try {
+            long s = DBJNI.Get(self, options, keySlice, result.pointer());
+            NativeStatus status = new NativeStatus(s);
+            try {
+                if(status.isOk()) {
+                    rc = new PinnedValue(result);
+                    return rc;
+                }
+                if(status.isNotFound()) {
+                    return null;
+                }
+                throw new DBException(status.toString(), status.isNotFound());
+            } finally {
+                status.delete();
+            }
+        } finally {
+            if( rc==null ) {
+                result.delete();
+            }
+        }
+    }
+
+    /**
+     * Gets the value of the key straight into the remaining space of the
+     * value buffer.  Both buffers must be direct buffers.  The limit of the
+     * value buffer is set to the end of the copied data.
+     *
+     * @return the full length of the value, or -1 if the key was not found.
+     * @throws ReadOnlyBufferException if the value buffer is read only.
+     */
+    public int get(NativeReadOptions options, ByteBuffer key, ByteBuffer value) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        checkArgNotNull(value, "value");
+        if( value.isReadOnly() ) {
+            // the native side would write through it regardless.
+            throw new ReadOnlyBufferException();
+        }
+        NativeSlice valueSlice = NativeSlice.create(value);
+        long length[] = new long[1];
+        if( !get(options, NativeSlice.create(key), valueSlice.data(), 0, valueSlice.size(), length) ) {
+            return -1;
+        }
+        value.limit(value.position() + (int) Math.min(length[0], valueSlice.size()));
+        return (int) length[0];
+    }
+
+    /**
+     * Reads up to length bytes of the value starting at offset.  Only
+     * the requested section of the value is copied into java.
+     *
+     * @return the section of the value, which is shorter than length if
+     *         the value ends first, or null if the key was not found.
+     */
+    public byte[] get(NativeReadOptions options, byte[] key, long offset, int length) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        if( offset < 0 ) throw new IllegalArgumentException("offset cannot be negative");
+        if( length < 0 ) throw new IllegalArgumentException("length cannot be negative");
+        NativeBuffer keyBuffer = NativeBuffer.create(key);
+        try {
+            return get(options, new NativeSlice(keyBuffer), offset, length);
+        } finally {
+            keyBuffer.delete();
+        }
+    }
+
+    private byte[] get(NativeReadOptions options, NativeSlice keySlice, long offset, int length) throws DBException {
+        assertAllocated();
+        // the section is cut out of the value natively, so only as many
+        // bytes as it really holds get copied.
+        NativeStdString result = new NativeStdString();
+        try {
+            NativeStatus status = new NativeStatus(DBJNI.GetSection(self, options, keySlice, offset, length, result.pointer()));
+            try {
+                if(status.isOk()) {
+                    return result.toByteArray();
+                }
+                if(status.isNotFound()) {
+                    return null;
+                }
+                throw new DBException(status.toString(), status.isNotFound());
+            } finally {
+                status.delete();
+            }
+        } finally {
+            result.delete();
+        }
+    }
+
+    /**
+     * @return the length of the key's value, or -1 if the key was not found.
+     */
+    public long valueLength(NativeReadOptions options, byte[] key) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(key, "key");
+        NativeBuffer keyBuffer = NativeBuffer.create(key);
+        try {
+            long length[] = new long[1];
+            if( !get(options, new NativeSlice(keyBuffer), 0, 0, 0, length) ) {
+                return -1;
+            }
+            return length[0];
+        } finally {
+            keyBuffer.delete();
+        }
+    }
+
+    public boolean exists(NativeReadOptions options, byte[] key) throws DBException {
+        return valueLength(options, key) >= 0;
+    }
+
+    private boolean get(NativeReadOptions options, NativeSlice keySlice, long dest, long offset, long capacity, long[] length) throws DBException {
+        assertAllocated();
+        NativeStatus status = new NativeStatus(DBJNI.GetInto(self, options, keySlice, dest, offset, capacity, length));
+        try {
+            if(status.isOk()) {
+                return true;
+            }
+            if(status.isNotFound()) {
+                return false;
+            }
+            throw new DBException(status.toString(), status.isNotFound());
+        } finally {
+            status.delete();
+        }
+    }
+
+    /**
+     * Looks up all the keys in a single native call.  Unless the options
+     * specify a snapshot, the lookups are done against an implicit snapshot
+     * so the results are consistent.  Keys which are not found get a null
+     * entry in the returned array.
+     */
+    public byte[][] multiGet(NativeReadOptions options, byte[][] keys) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(keys, "keys");
+        int keyLengths[] = new int[keys.length];
+        long total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            checkArgNotNull(keys[i], "key");
+            keyLengths[i] = keys[i].length;
+            total += keyLengths[i];
+        }
+        // the keys go straight into one native buffer.
+        NativeBuffer keyBuffer = NativeBuffer.create(Math.max(total, 1));
+        try {
+            long pos = 0;
+            for (int i = 0; i < keys.length; i++) {
+                keyBuffer.write(pos, keys[i], 0, keyLengths[i]);
+                pos += keyLengths[i];
+            }
+            return multiGet(options, keyBuffer, keyLengths);
+        } finally {
+            keyBuffer.delete();
+        }
+    }
+
+    private byte[][] multiGet(NativeReadOptions options, NativeBuffer keyBuffer, int[] keyLengths) throws DBException {
+        assertAllocated();
+        int valueLengths[] = new int[keyLengths.length];
+        NativeStdString result = new NativeStdString();
+        try {
+            checkStatus(DBJNI.MultiGet(self, options, keyBuffer.pointer(), keyLengths, keyLengths.length, valueLengths, result.pointer()));
+            // every value is copied straight out of the packed native
+            // string, so the values together may exceed 2GB.
+            byte[][] rc = new byte[keyLengths.length][];
+            long pos = 0;
+            for (int i = 0; i < rc.length; i++) {
+                if( valueLengths[i] >= 0 ) {
+                    rc[i] = new byte[valueLengths[i]];
+                    result.read(pos, rc[i], 0, valueLengths[i]);
+                    pos += valueLengths[i];
+                }
+            }
+            return rc;
+        } finally {
+            result.delete();
+        }
+    }
+
     public NativeSnapshot getSnapshot() {
         return new NativeSnapshot(DBJNI.GetSnapshot(self));
     }
@@ -336,6 +745,172 @@ public class NativeDB extends NativeObject {
         return new NativeIterator(DBJNI.NewIterator(self, options));
     }
 
+    /**
+     * Creates an iterator which only sees the keys from lower (inclusive)
+     * up to upper (exclusive).  The bounds are checked natively, so the
+     * iterator turns invalid at them.  A null bound leaves that side open.
+     */
+    public NativeIterator iterator(NativeReadOptions options, byte[] lower, byte[] upper) {
+        checkArgNotNull(options, "options");
+        NativeBuffer lowerBuffer = NativeBuffer.create(lower);
+        try {
+            NativeBuffer upperBuffer = NativeBuffer.create(upper);
+            try {
+                return iterator(options, NativeSlice.create(lowerBuffer), NativeSlice.create(upperBuffer));
+            } finally {
+                if( upperBuffer!=null ) {
+                    upperBuffer.delete();
+                }
+            }
+        } finally {
+            if( lowerBuffer!=null ) {
+                lowerBuffer.delete();
+            }
+        }
+    }
+
+    private NativeIterator iterator(NativeReadOptions options, NativeSlice lowerSlice, NativeSlice upperSlice) {
+        assertAllocated();
+        return new NativeIterator(DBJNI.NewBoundedIterator(self, comparator, options, lowerSlice, upperSlice));
+    }
+
+    /**
+     * Creates an iterator over the keys from prefix up to upper (exclusive)
+     * which skips the tables whose filter does not hold the probe.  The
+     * probe must be the filter entry of all the keys starting with the
+     * prefix, and the db must use the bytewise comparator.  Relies on the
+     * leveldb.patch adding ReadOptions::prefix.
+     */
+    public NativeIterator prefixIterator(NativeReadOptions options, byte[] prefix, byte[] upper, byte[] probe) {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(prefix, "prefix");
+        checkArgNotNull(probe, "probe");
+        NativeBuffer prefixBuffer = NativeBuffer.create(prefix);
+        try {
+            NativeBuffer upperBuffer = NativeBuffer.create(upper);
+            try {
+                NativeBuffer probeBuffer = NativeBuffer.create(probe);
+                try {
+                    assertAllocated();
+                    return new NativeIterator(DBJNI.NewPrefixIterator(self, comparator, options,
+                            NativeSlice.create(prefixBuffer), NativeSlice.create(upperBuffer), NativeSlice.create(probeBuffer)));
+                } finally {
+                    probeBuffer.delete();
+                }
+            } finally {
+                if( upperBuffer!=null ) {
+                    upperBuffer.delete();
+                }
+            }
+        } finally {
+            prefixBuffer.delete();
+        }
+    }
+
+    /**
+     * Counts the keys from lower up to upper (exclusive) and totals their
+     * sizes in native code, without copying any keys or values into java.
+     * A null bound leaves that side open.
+     */
+    public AggregateResult aggregate(NativeReadOptions options, byte[] lower, byte[] upper, AggregateSpec spec) throws DBException {
+        checkArgNotNull(options, "options");
+        checkArgNotNull(spec, "spec");
+        NativeBuffer lowerBuffer = NativeBuffer.create(lower);
+        try {
+            NativeBuffer upperBuffer = NativeBuffer.create(upper);
+            try {
+                return aggregate(options, NativeSlice.create(lowerBuffer), NativeSlice.create(upperBuffer), spec);
+            } finally {
+                if( upperBuffer!=null ) {
+                    upperBuffer.delete();
+                }
+            }
+        } finally {
+            if( lowerBuffer!=null ) {
+                lowerBuffer.delete();
+            }
+        }
+    }
+
+    private AggregateResult aggregate(NativeReadOptions options, NativeSlice lowerSlice, NativeSlice upperSlice, AggregateSpec spec) throws DBException {
+        assertAllocated();
+        long totals[] = new long[4];
+        NativeStdString first = new NativeStdString();
+        try {
+            NativeStdString last = new NativeStdString();
+            try {
+                checkStatus(DBJNI.Aggregate(self, comparator, options, lowerSlice, upperSlice, spec.flags(), totals, first.pointer(), last.pointer()));
+                boolean keys = spec.boundaryKeys() && totals[3]!=0;
+                return new AggregateResult(totals[0], totals[1],
+                        spec.valueBytes() ? totals[2] : -1,
+                        keys ? first.toByteArray() : null,
+                        keys ? last.toByteArray() : null);
+            } finally {
+                last.delete();
+            }
+        } finally {
+            first.delete();
+        }
+    }
+
+    /**
+     * Splits the range from lower up to upper into parts of roughly equal
+     * size on disk in a single native call.  A null bound leaves that side
+     * open.  The split keys are interpolated byte wise, so the db must use
+     * the bytewise comparator.
+     *
+     * @return the split keys between the parts, at most parts - 1 of them.
+     * @throws IllegalStateException if the db uses a custom comparator.
+     */
+    public byte[][] splitRange(byte[] lower, byte[] upper, int parts) throws DBException {
+        if( parts < 1 || parts > 65536 ) {
+            throw new IllegalArgumentException("parts must be between 1 and 65536");
+        }
+        if( !isBytewise() ) {
+            throw new IllegalStateException("Splitting a range is only supported with the bytewise comparator");
+        }
+        NativeBuffer lowerBuffer = NativeBuffer.create(lower);
+        try {
+            NativeBuffer upperBuffer = NativeBuffer.create(upper);
+            try {
+                return splitRange(NativeSlice.create(lowerBuffer), NativeSlice.create(upperBuffer), parts);
+            } finally {
+                if( upperBuffer!=null ) {
+                    upperBuffer.delete();
+                }
+            }
+        } finally {
+            if( lowerBuffer!=null ) {
+                lowerBuffer.delete();
+            }
+        }
+    }
+
+    /**
+     * @return true if the db orders its keys with the bytewise comparator.
+     */
+    public boolean isBytewise() {
+        return comparator == NativeComparator.BYTEWISE_COMPARATOR.pointer();
+    }
+
+    private byte[][] splitRange(NativeSlice lowerSlice, NativeSlice upperSlice, int parts) throws DBException {
+        assertAllocated();
+        NativeStdString result = new NativeStdString();
+        try {
+            checkStatus(DBJNI.SplitRange(self, comparator, lowerSlice, upperSlice, parts, result.pointer()));
+            ByteBuffer packed = ByteBuffer.wrap(result.toByteArray()).order(ByteOrder.nativeOrder());
+            ArrayList<byte[]> keys = new ArrayList<byte[]>();
+            while( packed.hasRemaining() ) {
+                byte[] key = new byte[packed.getInt()];
+                packed.get(key);
+                keys.add(key);
+            }
+            return keys.toArray(new byte[keys.size()][]);
+        } finally {
+            result.delete();
+        }
+    }
+
     public long[] getApproximateSizes(NativeRange... ranges) {
         if( ranges==null ) {
             return null;
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.fusesource.hawtjni.runtime.JniArg;
+import org.fusesource.hawtjni.runtime.JniClass;
+import org.fusesource.hawtjni.runtime.JniMethod;
+
+import java.util.Arrays;
+
+import static org.fusesource.hawtjni.runtime.ClassFlag.CPP;
+import static org.fusesource.hawtjni.runtime.MethodFlag.CPP_DELETE;
+
+/**
+ * Provides a java interface to the C++ leveldb::FilterPolicy class.
+ */
+public class NativeFilterPolicy extends NativeObject {
+
+    @JniClass(name="leveldb::FilterPolicy", flags={CPP})
+    private static class FilterPolicyJNI {
+        static {
+            NativeDB.LIBRARY.load();
+        }
+
+        @JniMethod(cast="const leveldb::FilterPolicy *", accessor="leveldb::NewBloomFilterPolicy")
+        public static final native long NewBloomFilterPolicy(
+                int bits_per_key);
+
+        @JniMethod(cast="const leveldb::FilterPolicy *", accessor="leveldbjni_new_prefix_filter_policy")
+        public static final native long NewPrefixFilterPolicy(
+                int bits_per_key,
+                @JniArg(cast="size_t") long prefix_length,
+                int delimiter);
+
+        @JniMethod(flags={CPP_DELETE})
+        public static final native void delete(long self);
+    }
+
+    // the prefix config of a prefix filter, 0 and -1 for a whole key filter.
+    private final int prefixLength;
+    private final int delimiter;
+
+    /**
+     * Creates a bloom filter policy.  Around 10 bits per key yields
+     * a false positive rate of about 1%.
+     */
+    public NativeFilterPolicy(int bitsPerKey) {
+        this(FilterPolicyJNI.NewBloomFilterPolicy(bitsPerKey), 0, -1);
+    }
+
+    NativeFilterPolicy(long self, int prefixLength, int delimiter) {
+        super(self);
+        this.prefixLength = prefixLength;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Creates a bloom filter policy which only hashes the first
+     * prefixLength bytes of every key.  Many keys sharing a prefix then
+     * only use one filter entry, and prefix iterators skip the tables
+     * which don't hold the prefix.
+     */
+    public static NativeFilterPolicy prefixBloomFilter(int bitsPerKey, int prefixLength) {
+        if( prefixLength <= 0 ) {
+            throw new IllegalArgumentException("prefixLength must be positive");
+        }
+        return new NativeFilterPolicy(FilterPolicyJNI.NewPrefixFilterPolicy(bitsPerKey, prefixLength, -1), prefixLength, -1);
+    }
+
+    /**
+     * Creates a bloom filter policy which only hashes the key bytes up to
+     * and including the first delimiter byte.
+     */
+    public static NativeFilterPolicy prefixBloomFilter(int bitsPerKey, byte delimiter) {
+        return new NativeFilterPolicy(FilterPolicyJNI.NewPrefixFilterPolicy(bitsPerKey, 0, delimiter & 0xFF), 0, delimiter & 0xFF);
+    }
+
+    /**
+     * @return the filter entry shared by all the keys starting with the
+     *         prefix, or null if they don't share one.  That's the first
+     *         prefixLength bytes of a long enough prefix, or the prefix up
+     *         to its first delimiter.
+     */
+    byte[] filterPrefix(byte[] prefix) {
+        if( prefixLength > 0 ) {
+            return prefix.length < prefixLength ? null : Arrays.copyOf(prefix, prefixLength);
+        }
+        if( delimiter >= 0 ) {
+            for (int i = 0; i < prefix.length; i++) {
+                if( (prefix[i] & 0xFF) == delimiter ) {
+                    return Arrays.copyOf(prefix, i + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    public void delete() {
+        assertAllocated();
+        FilterPolicyJNI.delete(self);
+        self = 0;
+    }
+
+}
@@ -33,6 +33,9 @@ package org.fusesource.leveldbjni.internal;
 
 import org.fusesource.hawtjni.runtime.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 import static org.fusesource.hawtjni.runtime.MethodFlag.*;
 import static org.fusesource.hawtjni.runtime.ArgFlag.*;
 import static org.fusesource.hawtjni.runtime.ClassFlag.*;
@@ -86,22 +89,75 @@ public class NativeIterator extends NativeObject {
                 long self
                 );
 
-        @JniMethod(copy="leveldb::Slice", flags={CPP_METHOD})
-        static final native long key(
-                long self
+        @JniMethod(accessor="leveldbjni_iterator_key")
+        static final native void key(
+                @JniArg(cast="leveldb::Iterator *") long self,
+                @JniArg(cast="jlong *", flags={NO_IN, CRITICAL}) long[] result
                 );
 
-        @JniMethod(copy="leveldb::Slice", flags={CPP_METHOD})
-        static final native long value(
-                long self
+        @JniMethod(accessor="leveldbjni_iterator_value")
+        static final native void value(
+                @JniArg(cast="leveldb::Iterator *") long self,
+                @JniArg(cast="jlong *", flags={NO_IN, CRITICAL}) long[] result
+                );
+
+        @JniMethod(accessor="leveldbjni_iterator_seek_for_prev")
+        static final native void SeekForPrev(
+                @JniArg(cast="leveldb::Iterator *") long self,
+                @JniArg(flags={BY_VALUE, NO_OUT}) NativeSlice target
+                );
+
+        @JniMethod(accessor="leveldbjni_iterator_status_ok")
+        static final native boolean StatusOk(
+                @JniArg(cast="leveldb::Iterator *") long self
                 );
 
         @JniMethod(copy="leveldb::Status", flags={CPP_METHOD})
         static final native long status(
                 long self
                 );
+
+        @JniMethod(copy="leveldb::Status", accessor="leveldbjni_iterator_next_batch")
+        static final native long NextBatch(
+                @JniArg(cast="leveldb::Iterator *") long self,
+                int mode,
+                boolean reverse,
+                @JniArg(cast="char *") long dest,
+                @JniArg(cast="size_t") long capacity,
+                int maxEntries,
+                @JniArg(cast="jlong *", flags={NO_IN}) long[] result
+                );
+
+        @JniMethod(cast="size_t", accessor="leveldbjni_iterator_value_length")
+        static final native long ValueLength(
+                @JniArg(cast="leveldb::Iterator *") long self
+                );
+    }
+
+    /**
+     * Selects what {@link #nextBatch(ByteBuffer, Mode, int, int)} copies
+     * out of the iterator.
+     */
+    public enum Mode {
+        /** The keys and the values. */
+        ENTRIES(0),
+        /** Just the keys, the values are never read. */
+        KEYS_ONLY(1),
+        /** The keys and the lengths of the values. */
+        VALUE_LENGTHS(2);
+
+        final int code;
+
+        Mode(int code) {
+            this.code = code;
+        }
     }
 
+    // holds the pointer and length of the current key or value.
+    private final long[] slice = new long[2];
+    // holds the entry count and byte length of the last batch.
+    private final long[] batchResult = new long[2];
+
     NativeIterator(long self) {
         super(self);
     }
@@ -118,7 +174,10 @@ public class NativeIterator extends NativeObject {
     }
 
     private void checkStatus() throws NativeDB.DBException {
-        NativeDB.checkStatus(IteratorJNI.status(self));
+        // only copy the status out when there is an error.
+        if( !IteratorJNI.StatusOk(self) ) {
+            NativeDB.checkStatus(IteratorJNI.status(self));
+        }
     }
 
     public void seekToFirst() {
@@ -151,6 +210,21 @@ public class NativeIterator extends NativeObject {
         checkStatus();
     }
 
+    /**
+     * Positions the iterator at the last key at or before the key.
+     */
+    public void seekForPrev(byte[] key) throws NativeDB.DBException {
+        NativeDB.checkArgNotNull(key, "key");
+        NativeBuffer keyBuffer = NativeBuffer.create(key);
+        try {
+            assertAllocated();
+            IteratorJNI.SeekForPrev(self, new NativeSlice(keyBuffer));
+            checkStatus();
+        } finally {
+            keyBuffer.delete();
+        }
+    }
+
     public void next() throws NativeDB.DBException {
         assertAllocated();
         IteratorJNI.Next(self);
@@ -165,27 +239,103 @@ public class NativeIterator extends NativeObject {
 
     public byte[] key() throws NativeDB.DBException {
         assertAllocated();
-        long slice_ptr = IteratorJNI.key(self);
+        IteratorJNI.key(self, slice);
         checkStatus();
-        try {
-            NativeSlice slice = new NativeSlice();
-            slice.read(slice_ptr, 0);
-            return slice.toByteArray();
-        } finally {
-            NativeSlice.SliceJNI.delete(slice_ptr);
-        }
+        return sliceToByteArray();
     }
 
     public byte[] value() throws NativeDB.DBException {
         assertAllocated();
-        long slice_ptr = IteratorJNI.value(self);
+        IteratorJNI.value(self, slice);
         checkStatus();
-        try {
-            NativeSlice slice = new NativeSlice();
-            slice.read(slice_ptr, 0);
-            return slice.toByteArray();
-        } finally {
-            NativeSlice.SliceJNI.delete(slice_ptr);
+        return sliceToByteArray();
+    }
+
+    private byte[] sliceToByteArray() {
+        if( slice[1] > Integer.MAX_VALUE ) {
+            throw new ArrayIndexOutOfBoundsException("Native slice is larger than the maximum Java array");
+        }
+        byte[] rc = new byte[(int) slice[1]];
+        NativeBuffer.NativeBufferJNI.buffer_copy(slice[0], 0, rc, 0, rc.length);
+        return rc;
+    }
+
+    /**
+     * @return the length of the current value without copying it.
+     */
+    public long valueLength() {
+        assertAllocated();
+        return IteratorJNI.ValueLength(self);
+    }
+
+    /**
+     * Copies up to maxEntries entries from the current position into the
+     * direct buffer, starting at its position and using at most maxBytes,
+     * and moves the iterator past them.  Each entry is packed as a native
+     * order int key length, the key, an int value length and the value.
+     * On success the buffer's limit is set to the end of the packed entries.
+     *
+     * @return the number of packed entries, 0 if the iterator is exhausted,
+     *         or the negated number of bytes the next entry needs if it
+     *         does not fit.
+     */
+    public int nextBatch(ByteBuffer out, int maxEntries, int maxBytes) throws NativeDB.DBException {
+        return nextBatch(out, Mode.ENTRIES, maxEntries, maxBytes);
+    }
+
+    /**
+     * Like {@link #nextBatch(ByteBuffer, int, int)}, but in the
+     * {@link Mode#KEYS_ONLY} mode an entry is just the key length and key,
+     * and in the {@link Mode#VALUE_LENGTHS} mode the value bytes are left out.
+     */
+    public int nextBatch(ByteBuffer out, Mode mode, int maxEntries, int maxBytes) throws NativeDB.DBException {
+        return batch(out, mode, false, maxEntries, maxBytes);
+    }
+
+    /**
+     * Like {@link #nextBatch(ByteBuffer, Mode, int, int)}, but moves the
+     * iterator backwards, so the entries are packed in descending order.
+     */
+    public int prevBatch(ByteBuffer out, Mode mode, int maxEntries, int maxBytes) throws NativeDB.DBException {
+        return batch(out, mode, true, maxEntries, maxBytes);
+    }
+
+    private int batch(ByteBuffer out, Mode mode, boolean reverse, int maxEntries, int maxBytes) throws NativeDB.DBException {
+        NativeDB.checkArgNotNull(out, "out");
+        NativeDB.checkArgNotNull(mode, "mode");
+        if( !out.isDirect() ) {
+            throw new IllegalArgumentException("The buffer must be a direct buffer");
+        }
+        if( out.isReadOnly() ) {
+            throw new ReadOnlyBufferException();
+        }
+        assertAllocated();
+        long address = NativeDB.DBJNI.GetDirectBufferAddress(out);
+        if( address == 0 ) {
+            throw new IllegalArgumentException("The buffer address is not accessible");
+        }
+        int count = batch(PointerMath.add(address, out.position()), Math.min(out.remaining(), maxBytes), mode, reverse, maxEntries);
+        if( count > 0 ) {
+            out.limit(out.position() + (int) batchResult[1]);
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #nextBatch(ByteBuffer, Mode, int, int)}, but fills a
+     * native buffer from its start.
+     */
+    int batch(NativeBuffer out, Mode mode, boolean reverse, int maxEntries) throws NativeDB.DBException {
+        assertAllocated();
+        return batch(out.pointer(), out.capacity(), mode, reverse, maxEntries);
+    }
+
+    private int batch(long address, long capacity, Mode mode, boolean reverse, int maxEntries) throws NativeDB.DBException {
+        NativeDB.checkStatus(IteratorJNI.NextBatch(self, mode.code, reverse, address, capacity, maxEntries, batchResult));
+        int count = (int) batchResult[0];
+        if( count == 0 ) {
+            return batchResult[1] > 0 ? (int) -Math.min(batchResult[1], Integer.MAX_VALUE) : 0;
         }
+        return count;
     }
 }
@@ -87,6 +87,11 @@ public class NativeOptions {
     @JniField(flags={FIELD_SKIP})
     private NativeCache cache;
 
+    @JniField(cast="const leveldb::FilterPolicy*")
+    private long filter_policy = 0;
+    @JniField(flags={FIELD_SKIP})
+    private NativeFilterPolicy filterPolicy;
+
     @JniField(cast="leveldb::CompressionType")
     private int compression = NativeCompressionType.kSnappyCompression.value;
 
@@ -204,4 +209,18 @@ public class NativeOptions {
         }
         return this;
     }
+
+    public NativeFilterPolicy filterPolicy() {
+        return filterPolicy;
+    }
+
+    public NativeOptions filterPolicy(NativeFilterPolicy filterPolicy) {
+        this.filterPolicy = filterPolicy;
+        if( filterPolicy!=null ) {
+            this.filter_policy = filterPolicy.pointer();
+        } else {
+            this.filter_policy = 0;
+        }
+        return this;
+    }
 }
@@ -33,6 +33,8 @@ package org.fusesource.leveldbjni.internal;
 
 import org.fusesource.hawtjni.runtime.*;
 
+import java.nio.ByteBuffer;
+
 import static org.fusesource.hawtjni.runtime.ArgFlag.*;
 import static org.fusesource.hawtjni.runtime.ClassFlag.CPP;
 import static org.fusesource.hawtjni.runtime.ClassFlag.STRUCT;
@@ -105,6 +107,21 @@ class NativeSlice {
         }
     }
 
+    /**
+     * Creates a slice over the remaining bytes of a direct buffer without
+     * copying them.  The slice is only valid while the buffer is reachable.
+     */
+    public static NativeSlice create(ByteBuffer buffer) {
+        if( !buffer.isDirect() ) {
+            throw new IllegalArgumentException("The buffer must be a direct buffer");
+        }
+        long address = NativeDB.DBJNI.GetDirectBufferAddress(buffer);
+        if( address == 0 ) {
+            throw new IllegalArgumentException("The buffer address is not accessible");
+        }
+        return new NativeSlice(PointerMath.add(address, buffer.position()), buffer.remaining());
+    }
+
     public long data() {
         return data_;
     }
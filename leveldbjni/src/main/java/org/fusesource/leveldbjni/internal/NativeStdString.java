@@ -34,6 +34,8 @@ package org.fusesource.leveldbjni.internal;
 import org.fusesource.hawtjni.runtime.JniClass;
 import org.fusesource.hawtjni.runtime.JniMethod;
 
+import java.nio.ByteBuffer;
+
 import static org.fusesource.hawtjni.runtime.ClassFlag.CPP;
 import static org.fusesource.hawtjni.runtime.MethodFlag.*;
 
@@ -93,6 +95,19 @@ class NativeStdString extends NativeObject {
         return StdStringJNI.length(self);
     }
 
+    /**
+     * @return a read only direct buffer which views the string's
+     *         native memory.  It must not be used once this object is deleted.
+     */
+    public ByteBuffer asByteBuffer() {
+        assertAllocated();
+        ByteBuffer rc = (ByteBuffer) NativeDB.DBJNI.NewDirectByteBuffer(StdStringJNI.c_str_ptr(self), length());
+        if( rc==null ) {
+            throw new UnsupportedOperationException("JNI access to direct buffers is not supported");
+        }
+        return rc.asReadOnlyBuffer();
+    }
+
     public byte[] toByteArray() {
         long l = length();
         if( l > Integer.MAX_VALUE ) {
@@ -102,4 +117,19 @@ class NativeStdString extends NativeObject {
         NativeBuffer.NativeBufferJNI.buffer_copy(StdStringJNI.c_str_ptr(self), 0, rc, 0, rc.length);
         return rc;
     }
+
+    /**
+     * Copies length bytes of the string starting at the at index into
+     * target.
+     */
+    void read(long at, byte[] target, int offset, int length) {
+        assertAllocated();
+        if( at < 0 || length < 0 || at+length > length() ) {
+            throw new ArrayIndexOutOfBoundsException("at + length exceeds the length of the string");
+        }
+        if( offset < 0 || offset+length > target.length ) {
+            throw new ArrayIndexOutOfBoundsException("offset + length exceed the length of the target buffer");
+        }
+        NativeBuffer.NativeBufferJNI.buffer_copy(StdStringJNI.c_str_ptr(self), at, target, offset, length);
+    }
 }
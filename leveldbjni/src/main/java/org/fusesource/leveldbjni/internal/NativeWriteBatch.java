@@ -36,6 +36,7 @@ import org.fusesource.hawtjni.runtime.JniClass;
 import org.fusesource.hawtjni.runtime.JniMethod;
 
 import static org.fusesource.hawtjni.runtime.ArgFlag.BY_VALUE;
+import static org.fusesource.hawtjni.runtime.ArgFlag.CRITICAL;
 import static org.fusesource.hawtjni.runtime.ArgFlag.NO_OUT;
 import static org.fusesource.hawtjni.runtime.ClassFlag.CPP;
 import static org.fusesource.hawtjni.runtime.MethodFlag.*;
@@ -77,6 +78,50 @@ public class NativeWriteBatch extends NativeObject {
                 long self
                 );
 
+        @JniMethod(accessor="leveldbjni_write_batch_set_contents")
+        static final native void SetContents(
+                @JniArg(cast="leveldb::WriteBatch *") long self,
+                @JniArg(cast="const char *", flags={NO_OUT, CRITICAL}) byte[] rep,
+                @JniArg(cast="size_t") long length
+                );
+
+        @JniMethod(accessor="leveldbjni_write_batch_append")
+        static final native void Append(
+                @JniArg(cast="leveldb::WriteBatch *") long self,
+                @JniArg(cast="leveldb::WriteBatch *") long other
+                );
+
+        @JniMethod(accessor="leveldbjni_write_batch_append_contents")
+        static final native void AppendContents(
+                @JniArg(cast="leveldb::WriteBatch *") long self,
+                @JniArg(cast="const char *", flags={NO_OUT, CRITICAL}) byte[] rep,
+                @JniArg(cast="size_t") long length
+                );
+
+        @JniMethod(accessor="leveldbjni_write_batch_count")
+        static final native int Count(
+                @JniArg(cast="leveldb::WriteBatch *") long self
+                );
+
+        @JniMethod(cast="size_t", accessor="leveldbjni_write_batch_size")
+        static final native long ApproximateSize(
+                @JniArg(cast="leveldb::WriteBatch *") long self
+                );
+
+        @JniMethod(copy="leveldb::Status", accessor="leveldbjni_write_batch_get_contents")
+        static final native long GetContents(
+                @JniArg(cast="leveldb::WriteBatch *") long self,
+                @JniArg(cast="std::string *") long rep
+                );
+
+    }
+
+    /**
+     * Receives the updates of a batch in the order they were added.
+     */
+    public interface Handler {
+        void put(byte[] key, byte[] value);
+        void delete(byte[] key);
     }
 
     public NativeWriteBatch() {
@@ -139,4 +184,89 @@ public class NativeWriteBatch extends NativeObject {
         WriteBatchJNI.Clear(self);
     }
 
+    /**
+     * Replaces the contents of this batch with the encoded batch using
+     * a single copy.
+     */
+    public void setContents(EncodedWriteBatch batch) {
+        NativeDB.checkArgNotNull(batch, "batch");
+        assertAllocated();
+        WriteBatchJNI.SetContents(self, batch.rep(), batch.size());
+    }
+
+    /**
+     * Replaces the contents of this batch with a representation
+     * previously exported with {@link #toByteArray()}.  The records and
+     * the header count are validated before anything is copied.
+     *
+     * @throws IllegalArgumentException if the representation is malformed.
+     */
+    public void setContents(byte[] rep) {
+        NativeDB.checkArgNotNull(rep, "rep");
+        EncodedWriteBatch.iterate(rep, rep.length, null);
+        assertAllocated();
+        WriteBatchJNI.SetContents(self, rep, rep.length);
+    }
+
+    /**
+     * Appends the updates of the other batch to this batch.  The
+     * records are copied natively in one go.
+     */
+    public void append(NativeWriteBatch other) {
+        NativeDB.checkArgNotNull(other, "other");
+        assertAllocated();
+        other.assertAllocated();
+        WriteBatchJNI.Append(self, other.pointer());
+    }
+
+    /**
+     * Appends the updates of an encoded batch to this batch.
+     */
+    public void append(EncodedWriteBatch other) {
+        NativeDB.checkArgNotNull(other, "other");
+        assertAllocated();
+        WriteBatchJNI.AppendContents(self, other.rep(), other.size());
+    }
+
+    /**
+     * @return the number of updates in the batch.
+     */
+    public int count() {
+        assertAllocated();
+        return WriteBatchJNI.Count(self);
+    }
+
+    /**
+     * @return the size of the batch's encoded representation.
+     */
+    public long approximateSize() {
+        assertAllocated();
+        return WriteBatchJNI.ApproximateSize(self);
+    }
+
+    /**
+     * @return a copy of the batch's encoded representation.  It can be
+     *         shipped elsewhere and loaded with {@link #setContents(byte[])}.
+     */
+    public byte[] toByteArray() throws NativeDB.DBException {
+        assertAllocated();
+        NativeStdString rep = new NativeStdString();
+        try {
+            NativeDB.checkStatus(WriteBatchJNI.GetContents(self, rep.pointer()));
+            return rep.toByteArray();
+        } finally {
+            rep.delete();
+        }
+    }
+
+    /**
+     * Passes all the updates in the batch to the handler.  The contents
+     * are copied out of the native batch once and decoded in java.
+     */
+    public void iterate(Handler handler) throws NativeDB.DBException {
+        NativeDB.checkArgNotNull(handler, "handler");
+        byte[] rep = toByteArray();
+        EncodedWriteBatch.iterate(rep, rep.length, handler);
+    }
+
 }
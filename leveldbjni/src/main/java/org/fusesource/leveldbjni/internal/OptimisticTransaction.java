@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.WriteOptions;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A transaction which reads from a snapshot taken when it began and
+ * buffers its writes in a write batch.  Nothing is locked while the
+ * transaction runs.  At commit time the keys it read or wrote are checked
+ * against a table of recent commits, and if another transaction committed
+ * one of those keys since this one began, the commit fails with a
+ * {@link ConflictException} and the transaction should be retried.
+ * </p>
+ * <p>
+ * Create it with {@link JniDB#beginTransaction()}.  Writes which don't go
+ * through a transaction are not checked for conflicts.  A transaction must
+ * only be used by one thread.
+ * </p>
+ */
+public class OptimisticTransaction {
+
+    /**
+     * Tracks the sequence of the last commit which touched each slot that
+     * keys hash onto.  Keys sharing a slot may see false conflicts.
+     */
+    static class CommitTable {
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicLongArray slots;
+        private final int mask;
+
+        CommitTable(int size) {
+            int s = 1;
+            while( s < size ) {
+                s <<= 1;
+            }
+            slots = new AtomicLongArray(s);
+            mask = s - 1;
+        }
+
+        long current() {
+            return sequence.get();
+        }
+
+        private int slot(byte[] key) {
+            int h = java.util.Arrays.hashCode(key);
+            h ^= (h >>> 16);
+            h *= 0x85ebca6b;
+            h ^= (h >>> 13);
+            return h & mask;
+        }
+
+        boolean changedSince(byte[] key, long since) {
+            return slots.get(slot(key)) > since;
+        }
+
+        void record(byte[][] keys) {
+            long seq = sequence.incrementAndGet();
+            for (byte[] key : keys) {
+                int slot = slot(key);
+                long previous;
+                do {
+                    previous = slots.get(slot);
+                } while( previous < seq && !slots.compareAndSet(slot, previous, seq) );
+            }
+        }
+    }
+
+    private static final byte[] DELETED = new byte[0];
+
+    private final JniDB db;
+    private final CommitTable commits;
+    private final long startSequence;
+    private final JniSnapshot snapshot;
+    private final ReadOptions readOptions;
+    private JniWriteBatch batch = new JniWriteBatch(new NativeWriteBatch());
+    private final HashMap<ByteBuffer, byte[]> writes = new HashMap<ByteBuffer, byte[]>();
+    private final HashSet<ByteBuffer> reads = new HashSet<ByteBuffer>();
+
+    OptimisticTransaction(JniDB db, CommitTable commits) {
+        this.db = db;
+        this.commits = commits;
+        // read the sequence before taking the snapshot so that every commit
+        // at or below it is visible in the snapshot.
+        this.startSequence = commits.current();
+        this.snapshot = (JniSnapshot) db.getSnapshot();
+        this.readOptions = new ReadOptions().snapshot(snapshot);
+    }
+
+    /**
+     * @return the key's value as of the start of the transaction, or the
+     *         value this transaction wrote.
+     */
+    public byte[] get(byte[] key) throws DBException {
+        assertActive();
+        NativeDB.checkArgNotNull(key, "key");
+        ByteBuffer k = ByteBuffer.wrap(key);
+        byte[] value = writes.get(k);
+        if( value!=null ) {
+            return value==DELETED ? null : value;
+        }
+        reads.add(k);
+        return db.get(key, readOptions);
+    }
+
+    public OptimisticTransaction put(byte[] key, byte[] value) {
+        assertActive();
+        NativeDB.checkArgNotNull(key, "key");
+        NativeDB.checkArgNotNull(value, "value");
+        batch.put(key, value);
+        writes.put(ByteBuffer.wrap(key), value);
+        return this;
+    }
+
+    public OptimisticTransaction delete(byte[] key) {
+        assertActive();
+        NativeDB.checkArgNotNull(key, "key");
+        batch.delete(key);
+        writes.put(ByteBuffer.wrap(key), DELETED);
+        return this;
+    }
+
+    /**
+     * Atomically writes the buffered updates if none of the keys this
+     * transaction read or wrote were changed by another commit since it
+     * began.  The transaction is finished either way.
+     *
+     * @throws ConflictException if there was a conflicting commit.
+     */
+    public void commit() throws DBException {
+        commit(new WriteOptions());
+    }
+
+    public void commit(WriteOptions options) throws DBException {
+        assertActive();
+        try {
+            if( writes.isEmpty() ) {
+                return;
+            }
+            HashSet<ByteBuffer> touched = new HashSet<ByteBuffer>(reads);
+            touched.addAll(writes.keySet());
+            byte[][] keys = new byte[touched.size()][];
+            int i = 0;
+            for (ByteBuffer key : touched) {
+                keys[i++] = key.array();
+            }
+            int[] stripes = db.locks().lock(keys);
+            try {
+                for (byte[] key : keys) {
+                    if( commits.changedSince(key, startSequence) ) {
+                        throw new ConflictException("Transaction conflict");
+                    }
+                }
+                db.writeWithoutLocking(batch, options);
+                byte[][] written = new byte[writes.size()][];
+                i = 0;
+                for (ByteBuffer key : writes.keySet()) {
+                    written[i++] = key.array();
+                }
+                commits.record(written);
+            } finally {
+                db.locks().unlock(stripes);
+            }
+        } finally {
+            rollback();
+        }
+    }
+
+    /**
+     * Discards the buffered updates and releases the snapshot.
+     */
+    public void rollback() {
+        if( batch!=null ) {
+            batch.close();
+            batch = null;
+            snapshot.close();
+        }
+    }
+
+    /**
+     * @return true until the transaction is committed or rolled back.
+     */
+    public boolean isActive() {
+        return batch!=null;
+    }
+
+    private void assertActive() {
+        if( batch==null ) {
+            throw new DBException("Transaction is finished");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.ReadOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Scans a key range with several threads.  The range is split into parts
+ * holding roughly the same number of bytes on disk with
+ * {@link JniDB#splitRange}, and each part is scanned with its own
+ * bounded {@link DBCursor}.  All the cursors read from the same snapshot
+ * so the parts add up to a consistent view of the range.  The split keys
+ * are computed byte wise, so only dbs using the bytewise comparator can
+ * be scanned.
+ * </p>
+ */
+public class ParallelScan {
+
+    /**
+     * Scans one part of the range.  It's called from the executor's threads.
+     */
+    public interface Visitor {
+        /**
+         * @param split the index of the part being scanned.
+         * @param cursor a cursor positioned before the first entry of the part.
+         */
+        void visit(int split, DBCursor cursor) throws Exception;
+    }
+
+    private final JniDB db;
+
+    ParallelScan(JniDB db) {
+        this.db = db;
+    }
+
+    /**
+     * Scans the range in up to splits parts on the executor and waits for
+     * all the parts to finish.
+     *
+     * @throws DBException if a visitor failed.
+     */
+    void run(ReadOptions options, byte[] lower, byte[] upper, int splits, ExecutorService executor, final Visitor visitor) throws DBException {
+        NativeDB.checkArgNotNull(executor, "executor");
+        NativeDB.checkArgNotNull(visitor, "visitor");
+        if( options==null ) {
+            options = new ReadOptions();
+        }
+        JniSnapshot snapshot = null;
+        final ReadOptions shared = new ReadOptions()
+                .verifyChecksums(options.verifyChecksums())
+                .fillCache(options.fillCache());
+        if( options.snapshot()!=null ) {
+            shared.snapshot(options.snapshot());
+        } else {
+            snapshot = (JniSnapshot) db.getSnapshot();
+            shared.snapshot(snapshot);
+        }
+        try {
+            List<byte[]> boundaries = db.splitRange(lower, upper, splits);
+            ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
+            Throwable failure = null;
+            for (int i = 0; i + 1 < boundaries.size() && failure==null; i++) {
+                final int split = i;
+                final byte[] start = boundaries.get(i);
+                final byte[] limit = boundaries.get(i + 1);
+                Callable<Object> task = new Callable<Object>() {
+                    public Object call() throws Exception {
+                        DBCursor cursor = db.cursor(shared, start, limit, NativeIterator.Mode.ENTRIES);
+                        try {
+                            cursor.seekToFirst();
+                            visitor.visit(split, cursor);
+                        } finally {
+                            cursor.close();
+                        }
+                        return null;
+                    }
+                };
+                try {
+                    futures.add(executor.submit(task));
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            // every part has to finish before the snapshot can be released.
+            boolean interrupted = false;
+            for (Future<Object> future : futures) {
+                while( true ) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if( failure==null ) {
+                            failure = e.getCause();
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        continue;
+                    }
+                    break;
+                }
+            }
+            if( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+            if( failure!=null ) {
+                throw new DBException("Parallel scan failed: " + failure, failure);
+            }
+        } finally {
+            if( snapshot!=null ) {
+                snapshot.close();
+            }
+        }
+    }
+}
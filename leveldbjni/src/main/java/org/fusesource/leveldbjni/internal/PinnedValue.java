@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A value which was read from the database but which is still held
+ * in native memory.  It lets you access large values without copying
+ * them into a java byte array.  The native memory is released when
+ * the value is closed, after which any buffer previously obtained from
+ * {@link #buffer()} must not be used.
+ */
+public class PinnedValue implements Closeable {
+
+    private NativeStdString value;
+    private ByteBuffer buffer;
+
+    PinnedValue(NativeStdString value) {
+        this.value = value;
+    }
+
+    public void close() {
+        if( value!=null ) {
+            value.delete();
+            value = null;
+            buffer = null;
+        }
+    }
+
+    private void assertOpen() {
+        if( value==null ) {
+            throw new IllegalStateException("The value has been closed");
+        }
+    }
+
+    public long length() {
+        assertOpen();
+        return value.length();
+    }
+
+    /**
+     * @return a read only direct buffer which views the value in place.
+     */
+    public ByteBuffer buffer() {
+        assertOpen();
+        if( buffer==null ) {
+            buffer = value.asByteBuffer();
+        }
+        return buffer.duplicate();
+    }
+
+    public byte[] toByteArray() {
+        assertOpen();
+        return value.toByteArray();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011, FuseSource Corp.  All rights reserved.
+ *
+ *     http://fusesource.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * 
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *    * Neither the name of FuseSource Corp. nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.fusesource.leveldbjni.internal;
+
+/**
+ * The operators {@link JniDB#update} can combine an existing value with.
+ * The numeric operators work on values holding an 8 byte big endian
+ * integer.
+ */
+public enum UpdateOperator {
+
+    /** Adds the operand to the existing value. */
+    ADD(0),
+    /** Keeps the larger of the existing value and the operand. */
+    MAX(1),
+    /** Keeps the smaller of the existing value and the operand. */
+    MIN(2),
+    /** Appends the operand bytes to the existing value. */
+    APPEND(3);
+
+    final int code;
+
+    UpdateOperator(int code) {
+        this.code = code;
+    }
+
+    public static byte[] encode(long value) {
+        byte[] rc = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            rc[i] = (byte) value;
+            value >>>= 8;
+        }
+        return rc;
+    }
+
+    public static long decode(byte[] value) {
+        if( value.length != 8 ) {
+            throw new IllegalArgumentException("value is not an int64");
+        }
+        long rc = 0;
+        for (int i = 0; i < 8; i++) {
+            rc = (rc << 8) | (value[i] & 0xFF);
+        }
+        return rc;
+    }
+}
@@ -76,8 +76,12 @@
 #include "leveldb/cache.h"
 #include "leveldb/comparator.h"
 #include "leveldb/env.h"
+#include "leveldb/filter_policy.h"
+#include "leveldb/iterator.h"
 #include "leveldb/slice.h"
 
+#include <vector>
+
 struct JNIComparator : public leveldb::Comparator {
   jobject target;
   jmethodID compare_method;
@@ -129,6 +133,708 @@ struct JNILogger : public leveldb::Logger {
 
 };
 
+/*
+ * A bloom filter policy which only adds a prefix of every key to the
+ * filter.  The prefix is either the first prefix_length bytes of the key
+ * or, when delimiter is not negative, everything up to and including the
+ * first delimiter byte.  Keys which are shorter than the prefix or which
+ * don't hold the delimiter are used as is.
+ */
+struct JNIPrefixFilterPolicy : public leveldb::FilterPolicy {
+  const leveldb::FilterPolicy* bloom;
+  size_t prefix_length;
+  int delimiter;
+  std::string name;
+
+  JNIPrefixFilterPolicy(int bits_per_key, size_t prefix_length, int delimiter) :
+    bloom(leveldb::NewBloomFilterPolicy(bits_per_key)), prefix_length(prefix_length), delimiter(delimiter) {
+    // The name has to change with the prefix config since filters
+    // built with another config can't be used.
+    name = delimiter >= 0 ? "leveldbjni.PrefixFilter.d" : "leveldbjni.PrefixFilter.f";
+    size_t n = delimiter >= 0 ? (size_t)delimiter : prefix_length;
+    std::string digits;
+    do {
+      digits.insert(digits.begin(), (char)('0' + n % 10));
+      n /= 10;
+    } while( n > 0 );
+    name += digits;
+  }
+
+  ~JNIPrefixFilterPolicy() {
+    delete bloom;
+  }
+
+  leveldb::Slice Prefix(const leveldb::Slice& key) const {
+    if( delimiter >= 0 ) {
+      const char* end = (const char*)memchr(key.data(), delimiter, key.size());
+      return end==NULL ? key : leveldb::Slice(key.data(), end - key.data() + 1);
+    }
+    return key.size() < prefix_length ? key : leveldb::Slice(key.data(), prefix_length);
+  }
+
+  const char* Name() const {
+    return name.c_str();
+  }
+
+  void CreateFilter(const leveldb::Slice* keys, int n, std::string* dst) const {
+    // The keys arrive sorted, so equal prefixes are next to each other.
+    std::vector<leveldb::Slice> prefixes;
+    prefixes.reserve(n);
+    for( int i=0; i < n; i++ ) {
+      leveldb::Slice prefix = Prefix(keys[i]);
+      if( prefixes.empty() || !(prefixes.back() == prefix) ) {
+        prefixes.push_back(prefix);
+      }
+    }
+    bloom->CreateFilter(prefixes.empty() ? NULL : &prefixes[0], (int)prefixes.size(), dst);
+  }
+
+  bool KeyMayMatch(const leveldb::Slice& key, const leveldb::Slice& filter) const {
+    return bloom->KeyMayMatch(Prefix(key), filter);
+  }
+};
+
+inline const leveldb::FilterPolicy* leveldbjni_new_prefix_filter_policy(int bits_per_key, size_t prefix_length, int delimiter) {
+  return new JNIPrefixFilterPolicy(bits_per_key, prefix_length, delimiter);
+}
+
+/*
+ * Replaces the contents of the batch with an already encoded
+ * representation.  Relies on the leveldb.patch making rep_ public.
+ */
+inline void leveldbjni_write_batch_set_contents(leveldb::WriteBatch* batch, const char* rep, size_t length) {
+  batch->rep_.assign(rep, length);
+}
+
+inline jint leveldbjni_write_batch_count(leveldb::WriteBatch* batch) {
+  const std::string& rep = batch->rep_;
+  if( rep.size() < 12 ) {
+    return 0;
+  }
+  return (jint)(((uint32_t)(unsigned char)rep[8]) |
+                ((uint32_t)(unsigned char)rep[9] << 8) |
+                ((uint32_t)(unsigned char)rep[10] << 16) |
+                ((uint32_t)(unsigned char)rep[11] << 24));
+}
+
+inline size_t leveldbjni_write_batch_size(leveldb::WriteBatch* batch) {
+  return batch->rep_.size();
+}
+
+/*
+ * Appends the records of an encoded batch representation to the batch
+ * and adds up the counts.
+ */
+inline void leveldbjni_write_batch_append_contents(leveldb::WriteBatch* batch, const char* rep, size_t length) {
+  if( length <= 12 ) {
+    return;
+  }
+  uint32_t count = (uint32_t)leveldbjni_write_batch_count(batch) +
+                   (((uint32_t)(unsigned char)rep[8]) |
+                    ((uint32_t)(unsigned char)rep[9] << 8) |
+                    ((uint32_t)(unsigned char)rep[10] << 16) |
+                    ((uint32_t)(unsigned char)rep[11] << 24));
+  batch->rep_.append(rep + 12, length - 12);
+  batch->rep_[8] = (char)(count & 0xff);
+  batch->rep_[9] = (char)((count >> 8) & 0xff);
+  batch->rep_[10] = (char)((count >> 16) & 0xff);
+  batch->rep_[11] = (char)((count >> 24) & 0xff);
+}
+
+inline void leveldbjni_write_batch_append(leveldb::WriteBatch* batch, leveldb::WriteBatch* other) {
+  if( batch == other ) {
+    std::string rep(other->rep_);
+    leveldbjni_write_batch_append_contents(batch, rep.data(), rep.size());
+  } else {
+    leveldbjni_write_batch_append_contents(batch, other->rep_.data(), other->rep_.size());
+  }
+}
+
+struct JNIWriteBatchValidator : public leveldb::WriteBatch::Handler {
+  virtual void Put(const leveldb::Slice& key, const leveldb::Slice& value) {}
+  virtual void Delete(const leveldb::Slice& key) {}
+};
+
+/*
+ * Checks the batch with WriteBatch::Iterate and copies its encoded
+ * contents into the rep string, so that the records can be decoded
+ * on the java side without an upcall per record.
+ */
+inline leveldb::Status leveldbjni_write_batch_get_contents(leveldb::WriteBatch* batch, std::string* rep) {
+  JNIWriteBatchValidator validator;
+  leveldb::Status status = batch->Iterate(&validator);
+  if( status.ok() ) {
+    rep->assign(batch->rep_);
+  }
+  return status;
+}
+
+/*
+ * Looks up count keys packed back to back in the keys buffer.  All the
+ * lookups are done against a single snapshot so the results are consistent.
+ * The found values are appended to the values string and their lengths
+ * stored in value_lengths, a length of -1 means the key was not found.
+ */
+inline leveldb::Status leveldbjni_multi_get(leveldb::DB* db, leveldb::ReadOptions options, const char* keys, const jint* key_lengths, jint count, jint* value_lengths, std::string* values) {
+  const leveldb::Snapshot* snapshot = NULL;
+  if( options.snapshot == NULL ) {
+    snapshot = db->GetSnapshot();
+    options.snapshot = snapshot;
+  }
+  leveldb::Status rc;
+  std::string value;
+  for( jint i=0; i < count; i++ ) {
+    leveldb::Slice key(keys, key_lengths[i]);
+    keys += key_lengths[i];
+    leveldb::Status s = db->Get(options, key, &value);
+    if( s.ok() && value.size() > 0x7fffffff ) {
+      rc = leveldb::Status::InvalidArgument("value is larger than the maximum Java array");
+      break;
+    }
+    if( s.ok() ) {
+      value_lengths[i] = (jint)value.size();
+      values->append(value);
+    } else if( s.IsNotFound() ) {
+      value_lengths[i] = -1;
+    } else {
+      rc = s;
+      break;
+    }
+  }
+  if( snapshot != NULL ) {
+    db->ReleaseSnapshot(snapshot);
+  }
+  return rc;
+}
+
+/*
+ * Gets the value of a key and copies as much of it, starting at offset,
+ * as fits into the caller supplied dest buffer.  The full length of the
+ * value is stored in length.  Use a zero capacity to just probe for the
+ * key and its value length.
+ */
+inline leveldb::Status leveldbjni_get_into(leveldb::DB* db, const leveldb::ReadOptions& options, const leveldb::Slice& key, char* dest, size_t offset, size_t capacity, jlong* length) {
+  std::string value;
+  leveldb::Status rc = db->Get(options, key, &value);
+  if( rc.ok() ) {
+    *length = (jlong)value.size();
+    if( offset < value.size() && capacity > 0 ) {
+      size_t remaining = value.size() - offset;
+      memcpy(dest, value.data() + offset, remaining < capacity ? remaining : capacity);
+    }
+  }
+  return rc;
+}
+
+/*
+ * Gets the value of the key and trims it in place to the section of at
+ * most length bytes starting at offset.
+ */
+inline leveldb::Status leveldbjni_get_section(leveldb::DB* db, const leveldb::ReadOptions& options, const leveldb::Slice& key, size_t offset, size_t length, std::string* value) {
+  leveldb::Status rc = db->Get(options, key, value);
+  if( rc.ok() ) {
+    if( offset >= value->size() ) {
+      value->clear();
+    } else {
+      value->erase(0, offset);
+      if( value->size() > length ) {
+        value->resize(length);
+      }
+    }
+  }
+  return rc;
+}
+
+/*
+ * Deletes the keys from begin (or the first key when NULL) up to end
+ * (exclusive, or the last key when NULL) with a single write of at most
+ * batch_size bytes of keys.  When the range is not done yet the key to
+ * continue from is stored in next and result[1] is set to 1.  result[0]
+ * holds the number of deleted keys.
+ */
+inline leveldb::Status leveldbjni_delete_range(leveldb::DB* db, const leveldb::Comparator* comparator, const leveldb::WriteOptions& options, const leveldb::Slice* begin, const leveldb::Slice* end, size_t batch_size, std::string* next, jlong* result) {
+  leveldb::ReadOptions read_options;
+  read_options.fill_cache = false;
+  leveldb::Iterator* it = db->NewIterator(read_options);
+  if( begin ) {
+    it->Seek(*begin);
+  } else {
+    it->SeekToFirst();
+  }
+  leveldb::WriteBatch batch;
+  size_t bytes = 0;
+  jlong count = 0;
+  jlong more = 0;
+  for( ; it->Valid(); it->Next() ) {
+    leveldb::Slice key = it->key();
+    if( end && comparator->Compare(key, *end) >= 0 ) {
+      break;
+    }
+    if( bytes >= batch_size ) {
+      next->assign(key.data(), key.size());
+      more = 1;
+      break;
+    }
+    batch.Delete(key);
+    bytes += key.size();
+    count++;
+  }
+  leveldb::Status status = it->status();
+  delete it;
+  if( status.ok() && count > 0 ) {
+    status = db->Write(options, &batch);
+  }
+  result[0] = status.ok() ? count : 0;
+  result[1] = status.ok() ? more : 0;
+  return status;
+}
+
+#define LEVELDBJNI_UPDATE_ADD 0
+#define LEVELDBJNI_UPDATE_MAX 1
+#define LEVELDBJNI_UPDATE_MIN 2
+#define LEVELDBJNI_UPDATE_APPEND 3
+
+inline int64_t leveldbjni_decode_int64(const char* data) {
+  uint64_t value = 0;
+  for( int i=0; i < 8; i++ ) {
+    value = (value << 8) | (unsigned char)data[i];
+  }
+  return (int64_t)value;
+}
+
+inline void leveldbjni_encode_int64(char* data, int64_t value) {
+  uint64_t v = (uint64_t)value;
+  for( int i=7; i >= 0; i-- ) {
+    data[i] = (char)(v & 0xff);
+    v >>= 8;
+  }
+}
+
+/*
+ * Reads the value of the key, combines it with the operand and writes the
+ * result back, all in one call.  The numeric operators work on 8 byte big
+ * endian integers, a missing value just takes the operand.  The caller
+ * must serialize updates of the same key.  The new value is stored in result.
+ */
+inline leveldb::Status leveldbjni_update(leveldb::DB* db, const leveldb::WriteOptions& options, const leveldb::Slice& key, const leveldb::Slice& operand, jint op, std::string* result) {
+  if( op != LEVELDBJNI_UPDATE_APPEND && operand.size() != 8 ) {
+    return leveldb::Status::InvalidArgument("update operand is not an int64");
+  }
+  std::string existing;
+  leveldb::Status status = db->Get(leveldb::ReadOptions(), key, &existing);
+  if( status.IsNotFound() ) {
+    result->assign(operand.data(), operand.size());
+  } else if( !status.ok() ) {
+    return status;
+  } else if( op == LEVELDBJNI_UPDATE_APPEND ) {
+    result->swap(existing);
+    result->append(operand.data(), operand.size());
+  } else {
+    if( existing.size() != 8 ) {
+      return leveldb::Status::InvalidArgument("existing value is not an int64");
+    }
+    int64_t a = leveldbjni_decode_int64(existing.data());
+    int64_t b = leveldbjni_decode_int64(operand.data());
+    int64_t value;
+    switch( op ) {
+      case LEVELDBJNI_UPDATE_ADD:
+        value = (int64_t)((uint64_t)a + (uint64_t)b);
+        break;
+      case LEVELDBJNI_UPDATE_MAX:
+        value = a > b ? a : b;
+        break;
+      case LEVELDBJNI_UPDATE_MIN:
+        value = a < b ? a : b;
+        break;
+      default:
+        return leveldb::Status::InvalidArgument("unknown update operator");
+    }
+    char buffer[8];
+    leveldbjni_encode_int64(buffer, value);
+    result->assign(buffer, 8);
+  }
+  return db->Put(options, key, *result);
+}
+
+inline void leveldbjni_put_int32(char* dest, size_t length) {
+  int32_t value = (int32_t)length;
+  memcpy(dest, &value, sizeof(value));
+}
+
+#define LEVELDBJNI_BATCH_ENTRIES 0
+#define LEVELDBJNI_BATCH_KEYS_ONLY 1
+#define LEVELDBJNI_BATCH_VALUE_LENGTHS 2
+
+/*
+ * Packs the entries from the iterator's current position into dest and
+ * advances the iterator past them.  Each entry is a native order int32 key
+ * length and the key, followed by the int32 value length and the value.
+ * LEVELDBJNI_BATCH_KEYS_ONLY leaves out the value length and value, and
+ * LEVELDBJNI_BATCH_VALUE_LENGTHS just the value, so the values are never
+ * copied.  When reverse is set the iterator moves backwards.  Stops after
+ * max_entries entries, at the first entry that does not fit or when the
+ * iterator is exhausted.  result[0] is set to the
+ * number of packed entries and result[1] to the number of bytes used.  If
+ * not even the first entry fits, result[1] is set to the bytes it needs.
+ */
+inline leveldb::Status leveldbjni_iterator_next_batch(leveldb::Iterator* it, jint mode, jboolean reverse, char* dest, size_t capacity, jint max_entries, jlong* result) {
+  jint count = 0;
+  size_t used = 0;
+  while( count < max_entries && it->Valid() ) {
+    leveldb::Slice key = it->key();
+    size_t needed = 4 + key.size();
+    leveldb::Slice value;
+    if( mode != LEVELDBJNI_BATCH_KEYS_ONLY ) {
+      value = it->value();
+      needed += 4;
+      if( mode == LEVELDBJNI_BATCH_ENTRIES ) {
+        needed += value.size();
+      }
+    }
+    if( used + needed > capacity ) {
+      if( count == 0 ) {
+        used = needed;
+      }
+      break;
+    }
+    char* p = dest + used;
+    leveldbjni_put_int32(p, key.size());
+    memcpy(p + 4, key.data(), key.size());
+    if( mode != LEVELDBJNI_BATCH_KEYS_ONLY ) {
+      leveldbjni_put_int32(p + 4 + key.size(), value.size());
+      if( mode == LEVELDBJNI_BATCH_ENTRIES ) {
+        memcpy(p + 8 + key.size(), value.data(), value.size());
+      }
+    }
+    used += needed;
+    count++;
+    if( reverse ) {
+      it->Prev();
+    } else {
+      it->Next();
+    }
+  }
+  result[0] = count;
+  result[1] = (jlong)used;
+  return it->status();
+}
+
+inline size_t leveldbjni_iterator_value_length(leveldb::Iterator* it) {
+  return it->value().size();
+}
+
+/*
+ * Stores the pointer and length of the current key or value in result
+ * instead of returning a heap allocated Slice copy.
+ */
+inline void leveldbjni_iterator_key(leveldb::Iterator* it, jlong* result) {
+  leveldb::Slice key = it->key();
+  result[0] = (jlong)(intptr_t)key.data();
+  result[1] = (jlong)key.size();
+}
+
+inline void leveldbjni_iterator_value(leveldb::Iterator* it, jlong* result) {
+  leveldb::Slice value = it->value();
+  result[0] = (jlong)(intptr_t)value.data();
+  result[1] = (jlong)value.size();
+}
+
+/*
+ * Positions the iterator at the last key at or before the target.
+ */
+inline void leveldbjni_iterator_seek_for_prev(leveldb::Iterator* it, const leveldb::Slice& target) {
+  it->Seek(target);
+  if( !it->Valid() ) {
+    it->SeekToLast();
+  } else if( it->key() != target ) {
+    it->Prev();
+  }
+}
+
+inline jboolean leveldbjni_iterator_status_ok(leveldb::Iterator* it) {
+  return it->status().ok() ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * An iterator which only sees the keys from lower (inclusive) up to upper
+ * (exclusive) of the iterator it wraps.  Valid() turns false when it moves
+ * past either bound.
+ */
+struct JNIBoundedIterator : public leveldb::Iterator {
+  leveldb::Iterator* base;
+  const leveldb::Comparator* comparator;
+  std::string lower;
+  std::string upper;
+  bool has_lower;
+  bool has_upper;
+  // the filter probe of a prefix iterator, see leveldbjni_new_prefix_iterator.
+  std::string probe;
+  leveldb::Slice probe_slice;
+
+  JNIBoundedIterator(leveldb::Iterator* base, const leveldb::Comparator* comparator, const leveldb::Slice* lower, const leveldb::Slice* upper)
+    : base(base), comparator(comparator), has_lower(lower != NULL), has_upper(upper != NULL) {
+    if( lower ) {
+      this->lower.assign(lower->data(), lower->size());
+    }
+    if( upper ) {
+      this->upper.assign(upper->data(), upper->size());
+    }
+  }
+
+  virtual ~JNIBoundedIterator() {
+    delete base;
+  }
+
+  virtual bool Valid() const {
+    if( !base->Valid() ) {
+      return false;
+    }
+    leveldb::Slice key = base->key();
+    if( has_upper && comparator->Compare(key, upper) >= 0 ) {
+      return false;
+    }
+    if( has_lower && comparator->Compare(key, lower) < 0 ) {
+      return false;
+    }
+    return true;
+  }
+
+  virtual void SeekToFirst() {
+    if( has_lower ) {
+      base->Seek(lower);
+    } else {
+      base->SeekToFirst();
+    }
+  }
+
+  virtual void SeekToLast() {
+    if( has_upper ) {
+      base->Seek(upper);
+      if( base->Valid() ) {
+        base->Prev();
+      } else {
+        base->SeekToLast();
+      }
+    } else {
+      base->SeekToLast();
+    }
+  }
+
+  virtual void Seek(const leveldb::Slice& target) {
+    if( has_lower && comparator->Compare(target, lower) < 0 ) {
+      base->Seek(lower);
+    } else {
+      base->Seek(target);
+    }
+  }
+
+  virtual void Next() {
+    base->Next();
+  }
+
+  virtual void Prev() {
+    base->Prev();
+  }
+
+  virtual leveldb::Slice key() const {
+    return base->key();
+  }
+
+  virtual leveldb::Slice value() const {
+    return base->value();
+  }
+
+  virtual leveldb::Status status() const {
+    return base->status();
+  }
+};
+
+inline leveldb::Iterator* leveldbjni_new_bounded_iterator(leveldb::DB* db, const leveldb::Comparator* comparator, const leveldb::ReadOptions& options, const leveldb::Slice* lower, const leveldb::Slice* upper) {
+  return new JNIBoundedIterator(db->NewIterator(options), comparator, lower, upper);
+}
+
+/*
+ * A bounded iterator over the keys starting with prefix which hands the
+ * probe to the tables through ReadOptions::prefix, a field added by the
+ * leveldb.patch.  A table whose filter does not hold the probe is skipped
+ * without reading its data blocks.  The tables keep pointing at the probe
+ * while the iterator lives, so the iterator owns it.
+ */
+inline leveldb::Iterator* leveldbjni_new_prefix_iterator(leveldb::DB* db, const leveldb::Comparator* comparator, leveldb::ReadOptions options, const leveldb::Slice* prefix, const leveldb::Slice* upper, const leveldb::Slice* probe) {
+  JNIBoundedIterator* it = new JNIBoundedIterator(NULL, comparator, prefix, upper);
+  it->probe.assign(probe->data(), probe->size());
+  it->probe_slice = leveldb::Slice(it->probe);
+  options.prefix = &it->probe_slice;
+  it->base = db->NewIterator(options);
+  return it;
+}
+
+#define LEVELDBJNI_AGGREGATE_VALUE_BYTES 1
+#define LEVELDBJNI_AGGREGATE_BOUNDARY_KEYS 2
+
+/*
+ * Walks the keys from lower up to upper (NULL for open ends) with one
+ * iterator, so the totals come from a single consistent view of the db.
+ * totals is set to the number of keys, the total key bytes and, with the
+ * LEVELDBJNI_AGGREGATE_VALUE_BYTES flag, the total value bytes.  With the
+ * LEVELDBJNI_AGGREGATE_BOUNDARY_KEYS flag the first and last keys are
+ * stored and totals[3] is set to 1 if the range was not empty.
+ */
+inline leveldb::Status leveldbjni_aggregate(leveldb::DB* db, const leveldb::Comparator* comparator, leveldb::ReadOptions options, const leveldb::Slice* lower, const leveldb::Slice* upper, jint flags, jlong* totals, std::string* first, std::string* last) {
+  leveldb::Iterator* it = leveldbjni_new_bounded_iterator(db, comparator, options, lower, upper);
+  jlong count = 0;
+  jlong key_bytes = 0;
+  jlong value_bytes = 0;
+  bool values = (flags & LEVELDBJNI_AGGREGATE_VALUE_BYTES) != 0;
+  for( it->SeekToFirst(); it->Valid(); it->Next() ) {
+    if( count == 0 && (flags & LEVELDBJNI_AGGREGATE_BOUNDARY_KEYS) ) {
+      leveldb::Slice key = it->key();
+      first->assign(key.data(), key.size());
+    }
+    count++;
+    key_bytes += it->key().size();
+    if( values ) {
+      value_bytes += it->value().size();
+    }
+  }
+  leveldb::Status status = it->status();
+  if( status.ok() && count > 0 && (flags & LEVELDBJNI_AGGREGATE_BOUNDARY_KEYS) ) {
+    it->SeekToLast();
+    if( it->Valid() ) {
+      leveldb::Slice key = it->key();
+      last->assign(key.data(), key.size());
+    }
+    status = it->status();
+  }
+  delete it;
+  totals[0] = count;
+  totals[1] = key_bytes;
+  totals[2] = value_bytes;
+  totals[3] = count > 0 ? 1 : 0;
+  return status;
+}
+
+/*
+ * Treats a and b as big endian fractions and returns a + (b - a) * i / n,
+ * without trailing zero bytes.
+ */
+inline std::string leveldbjni_interpolate(const std::string& a, const std::string& b, uint32_t i, uint32_t n) {
+  size_t length = (a.size() > b.size() ? a.size() : b.size()) + 1;
+  // x = (a * (n - i) + b * i) / n, with two extra leading digits for the carry.
+  std::vector<uint32_t> x(length + 2, 0);
+  for( size_t k = length; k-- > 0; ) {
+    uint32_t da = k < a.size() ? (unsigned char)a[k] : 0;
+    uint32_t db = k < b.size() ? (unsigned char)b[k] : 0;
+    x[k + 2] = da * (n - i) + db * i;
+  }
+  uint64_t carry = 0;
+  for( size_t k = x.size(); k-- > 0; ) {
+    uint64_t v = x[k] + carry;
+    x[k] = (uint32_t)(v & 0xff);
+    carry = v >> 8;
+  }
+  uint64_t remainder = 0;
+  std::string rc;
+  for( size_t k = 0; k < x.size(); k++ ) {
+    uint64_t v = (remainder << 8) | x[k];
+    if( k >= 2 ) {
+      rc.push_back((char)(v / n));
+    }
+    remainder = v % n;
+  }
+  while( rc.size() > 1 && rc[rc.size() - 1] == 0 ) {
+    rc.erase(rc.size() - 1);
+  }
+  return rc;
+}
+
+inline uint64_t leveldbjni_range_size(leveldb::DB* db, const std::string& start, const std::string& limit) {
+  leveldb::Range range(start, limit);
+  uint64_t size = 0;
+  db->GetApproximateSizes(&range, 1, &size);
+  return size;
+}
+
+/*
+ * Splits the range from lower up to upper (NULL for open ends) into parts
+ * of roughly equal size on disk.  The split keys are found by bisecting
+ * with GetApproximateSizes, which estimates the sizes from the sstable
+ * index blocks.  Keys are treated as big endian fractions, so only the
+ * bytewise comparator is supported.  The split keys are appended to
+ * result, each preceded by its native order int32 length.
+ */
+inline leveldb::Status leveldbjni_split_range(leveldb::DB* db, const leveldb::Comparator* comparator, const leveldb::Slice* lower, const leveldb::Slice* upper, jint parts, std::string* result) {
+  std::string first;
+  std::string last;
+  if( comparator != leveldb::BytewiseComparator() ) {
+    return leveldb::Status::InvalidArgument("splitting a range needs the bytewise comparator");
+  }
+  if( parts < 2 ) {
+    return leveldb::Status::OK();
+  }
+  {
+    // skip empty ranges and bound the open ends with the actual first
+    // and last keys.
+    leveldb::ReadOptions options;
+    options.fill_cache = false;
+    leveldb::Iterator* it = leveldbjni_new_bounded_iterator(db, comparator, options, lower, upper);
+    it->SeekToFirst();
+    bool empty = !it->Valid();
+    if( !empty ) {
+      if( lower ) {
+        first = lower->ToString();
+      } else {
+        first = it->key().ToString();
+      }
+      if( upper ) {
+        last = upper->ToString();
+      } else {
+        it->SeekToLast();
+        last = it->key().ToString();
+        last.push_back('\0');
+      }
+    }
+    leveldb::Status status = it->status();
+    delete it;
+    if( !status.ok() || empty ) {
+      return status;
+    }
+  }
+  uint64_t total = leveldbjni_range_size(db, first, last);
+  std::string from = first;
+  for( jint i = 1; i < parts; i++ ) {
+    std::string boundary;
+    if( total > 0 ) {
+      uint64_t target = total / parts * i + total % parts * i / parts;
+      std::string low = from;
+      std::string high = last;
+      for( int step = 0; step < 24; step++ ) {
+        std::string mid = leveldbjni_interpolate(low, high, 1, 2);
+        if( leveldb::Slice(mid).compare(low) <= 0 || leveldb::Slice(mid).compare(high) >= 0 ) {
+          break;
+        }
+        if( leveldbjni_range_size(db, first, mid) < target ) {
+          low.swap(mid);
+        } else {
+          high.swap(mid);
+        }
+      }
+      boundary.swap(high);
+    } else {
+      boundary = leveldbjni_interpolate(first, last, (uint32_t)i, (uint32_t)parts);
+    }
+    if( leveldb::Slice(boundary).compare(from) <= 0 || leveldb::Slice(boundary).compare(last) >= 0 ) {
+      continue;
+    }
+    char length[4];
+    leveldbjni_put_int32(length, boundary.size());
+    result->append(length, 4);
+    result->append(boundary);
+    from.swap(boundary);
+  }
+  return leveldb::Status::OK();
+}
+
 #endif
 
 
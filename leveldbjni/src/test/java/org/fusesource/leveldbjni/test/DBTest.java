@@ -33,14 +33,45 @@ package org.fusesource.leveldbjni.test;
 
 import junit.framework.TestCase;
 import org.fusesource.leveldbjni.JniDBFactory;
+import org.fusesource.leveldbjni.JniOptions;
+import org.fusesource.leveldbjni.internal.AggregateResult;
+import org.fusesource.leveldbjni.internal.AggregateSpec;
+import org.fusesource.leveldbjni.internal.AsyncDB;
+import org.fusesource.leveldbjni.internal.BulkLoader;
+import org.fusesource.leveldbjni.internal.ConflictException;
+import org.fusesource.leveldbjni.internal.DBCursor;
+import org.fusesource.leveldbjni.internal.GroupCommitWriter;
 import org.fusesource.leveldbjni.internal.JniDB;
+import org.fusesource.leveldbjni.internal.JniDBIterator;
+import org.fusesource.leveldbjni.internal.JniWriteBatch;
+import org.fusesource.leveldbjni.internal.NativeDB;
+import org.fusesource.leveldbjni.internal.NativeIterator;
+import org.fusesource.leveldbjni.internal.NativeOptions;
+import org.fusesource.leveldbjni.internal.NativeReadOptions;
+import org.fusesource.leveldbjni.internal.NativeWriteOptions;
+import org.fusesource.leveldbjni.internal.NativeWriteBatch;
+import org.fusesource.leveldbjni.internal.OptimisticTransaction;
+import org.fusesource.leveldbjni.internal.ParallelScan;
+import org.fusesource.leveldbjni.internal.PinnedValue;
+import org.fusesource.leveldbjni.internal.UpdateOperator;
 import org.iq80.leveldb.*;
 import org.junit.Test;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.fusesource.leveldbjni.JniDBFactory.asString;
 import static org.fusesource.leveldbjni.JniDBFactory.bytes;
@@ -114,6 +145,138 @@ public class DBTest extends TestCase {
         db.close();
     }
 
+    @Test
+    public void testMultiGet() throws IOException, DBException {
+
+        Options options = new Options().createIfMissing(true);
+
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        db.put(bytes("Tampa"), bytes("green"));
+        db.put(bytes("London"), bytes("red"));
+        db.put(bytes("Empty"), new byte[0]);
+
+        byte[][] values = db.multiGet(new byte[][]{bytes("Tampa"), bytes("New York"), bytes("London"), bytes("Empty")}, new ReadOptions());
+        assertEquals(4, values.length);
+        assertEquals(bytes("green"), values[0]);
+        assertNull(values[1]);
+        assertEquals(bytes("red"), values[2]);
+        assertEquals(new byte[0], values[3]);
+
+        List<byte[]> list = db.multiGet(Arrays.asList(bytes("London"), bytes("Tampa")));
+        assertEquals(bytes("red"), list.get(0));
+        assertEquals(bytes("green"), list.get(1));
+
+        assertEquals(0, db.multiGet(new byte[0][], new ReadOptions()).length);
+
+        db.close();
+    }
+
+    @Test
+    public void testDirectBuffers() throws IOException, DBException {
+
+        Options options = new Options().createIfMissing(true);
+
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        ByteBuffer key = ByteBuffer.allocateDirect(16);
+        key.put(bytes("Tampa")).flip();
+        ByteBuffer value = ByteBuffer.allocateDirect(16);
+        value.put(bytes("green")).flip();
+        db.put(key, value);
+        assertEquals(bytes("green"), db.get(bytes("Tampa")));
+
+        ByteBuffer out = ByteBuffer.allocateDirect(16);
+        assertEquals(5, db.get(key, out));
+        assertEquals(5, out.remaining());
+        byte[] data = new byte[out.remaining()];
+        out.get(data);
+        assertEquals(bytes("green"), data);
+
+        // A buffer that is too small gets a partial value.
+        out = ByteBuffer.allocateDirect(2);
+        assertEquals(5, db.get(key, out));
+        assertEquals(2, out.remaining());
+
+        // the value must not be written through a read only buffer.
+        ByteBuffer backing = ByteBuffer.allocateDirect(16);
+        try {
+            db.get(key, backing.asReadOnlyBuffer());
+            fail("Expected ReadOnlyBufferException");
+        } catch (ReadOnlyBufferException e) {
+        }
+        assertEquals(0, backing.get(0));
+
+        db.delete(key);
+        assertEquals(-1, db.get(key, ByteBuffer.allocateDirect(16)));
+
+        try {
+            db.put(ByteBuffer.wrap(bytes("Tampa")), value);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void testPinnedGet() throws IOException, DBException {
+
+        Options options = new Options().createIfMissing(true);
+
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        byte[] data = new byte[1024 * 128];
+        new Random(0).nextBytes(data);
+        db.put(bytes("large"), data);
+
+        assertNull(db.getPinned(bytes("missing")));
+
+        PinnedValue value = db.getPinned(bytes("large"));
+        try {
+            assertEquals(data.length, value.length());
+            ByteBuffer buffer = value.buffer();
+            assertTrue(buffer.isDirect());
+            assertTrue(buffer.isReadOnly());
+            assertEquals(ByteBuffer.wrap(data), buffer);
+            assertEquals(data, value.toByteArray());
+        } finally {
+            value.close();
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void testExistsAndPartialGet() throws IOException, DBException {
+
+        Options options = new Options().createIfMissing(true);
+
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        db.put(bytes("Tampa"), bytes("green and blue"));
+
+        assertTrue(db.exists(bytes("Tampa")));
+        assertFalse(db.exists(bytes("London")));
+        assertEquals(14, db.valueLength(bytes("Tampa")));
+        assertEquals(-1, db.valueLength(bytes("London")));
+
+        assertEquals(bytes("green"), db.get(bytes("Tampa"), 0, 5));
+        assertEquals(bytes("blue"), db.get(bytes("Tampa"), 10, 100));
+        assertEquals(new byte[0], db.get(bytes("Tampa"), 20, 5));
+        assertNull(db.get(bytes("London"), 0, 5));
+
+        // a huge window over a small value only copies the value.
+        assertEquals(bytes("and blue"), db.get(bytes("Tampa"), 6, Integer.MAX_VALUE));
+        assertNull(db.get(bytes("London"), 0, Integer.MAX_VALUE));
+
+        db.close();
+    }
+
     @Test
     public void testIterator() throws IOException, DBException {
 
@@ -210,6 +373,1024 @@ public class DBTest extends TestCase {
         db.close();
     }
 
+    @Test
+    public void testGroupCommitWriter() throws Exception {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        final JniDB db = (JniDB) factory.open(path, options);
+
+        final GroupCommitWriter writer = new GroupCommitWriter(db, new WriteOptions().sync(true), 1000, 1, TimeUnit.MILLISECONDS);
+        Thread threads[] = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        writer.put(bytes("t" + thread + "-" + i), bytes("v" + i));
+                    }
+                    writer.delete(bytes("t" + thread + "-0"));
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        assertEquals(threads.length * 101, writer.updateCount());
+        assertTrue(writer.batchCount() <= writer.updateCount());
+        for (int t = 0; t < threads.length; t++) {
+            assertNull(db.get(bytes("t" + t + "-0")));
+            for (int i = 1; i < 100; i++) {
+                assertEquals(bytes("v" + i), db.get(bytes("t" + t + "-" + i)));
+            }
+        }
+        db.close();
+    }
+
+    @Test
+    public void testGroupCommitWriterCloseRace() throws Exception {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        for (int round = 0; round < 20; round++) {
+            final GroupCommitWriter writer = new GroupCommitWriter(db, new WriteOptions(), 100);
+            final List<Future<Void>> futures = Collections.synchronizedList(new ArrayList<Future<Void>>());
+            Thread threads[] = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 1000; i++) {
+                                futures.add(writer.putAsync(bytes("key" + i), bytes("value")));
+                            }
+                        } catch (DBException closed) {
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            Thread.sleep(5);
+            writer.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // every accepted update must have been committed.
+            synchronized (futures) {
+                for (Future<Void> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+            }
+        }
+        db.close();
+    }
+
+    @Test
+    public void testAsyncDB() throws Exception {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+        AsyncDB async = new AsyncDB(db, 2, 1, 100);
+
+        ArrayList<Future<Void>> writes = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 10; i++) {
+            writes.add(async.putAsync(bytes("key" + i), bytes("value" + i)));
+        }
+        for (Future<Void> write : writes) {
+            write.get();
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final byte[][] result = new byte[1][];
+        async.getAsync(bytes("key3"), new ReadOptions(), new AsyncDB.Callback<byte[]>() {
+            public void onSuccess(byte[] value) {
+                result[0] = value;
+                latch.countDown();
+            }
+            public void onFailure(Throwable failure) {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(bytes("value3"), result[0]);
+
+        assertNull(async.getAsync(bytes("missing")).get());
+
+        List<Map.Entry<byte[], byte[]>> entries = async.scanAsync(bytes("key5"), 3, new ReadOptions(), null).get();
+        assertEquals(3, entries.size());
+        assertEquals(bytes("key5"), entries.get(0).getKey());
+        assertEquals(bytes("value7"), entries.get(2).getValue());
+
+        async.close();
+        db.close();
+    }
+
+    @Test
+    public void testEncodedWriteBatch() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        db.put(bytes("NA"), bytes("Na"));
+
+        WriteBatch batch = db.createEncodedWriteBatch();
+        batch.delete(bytes("NA"));
+        batch.put(bytes("Tampa"), bytes("green"));
+        batch.put(bytes("London"), bytes("red"));
+        byte[] large = new byte[300];
+        batch.put(bytes("Large"), large);
+        db.write(batch);
+        batch.close();
+
+        assertNull(db.get(bytes("NA")));
+        assertEquals(bytes("green"), db.get(bytes("Tampa")));
+        assertEquals(bytes("red"), db.get(bytes("London")));
+        assertEquals(large, db.get(bytes("Large")));
+
+        // a closed batch must not quietly allocate a new native batch.
+        try {
+            db.write(batch);
+            fail("Expected DBException");
+        } catch (DBException e) {
+        }
+        try {
+            batch.put(bytes("Tampa"), bytes("red"));
+            fail("Expected DBException");
+        } catch (DBException e) {
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void testWriteBatchIterate() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        JniWriteBatch batch = (JniWriteBatch) db.createWriteBatch();
+        batch.put(bytes("Tampa"), bytes("green"));
+        batch.delete(bytes("NA"));
+        batch.put(bytes("London"), bytes("red"));
+        assertEquals(3, batch.count());
+        assertTrue(batch.approximateSize() > 12);
+
+        final ArrayList<String> updates = new ArrayList<String>();
+        NativeWriteBatch.Handler handler = new NativeWriteBatch.Handler() {
+            public void put(byte[] key, byte[] value) {
+                updates.add("put " + asString(key) + "=" + asString(value));
+            }
+            public void delete(byte[] key) {
+                updates.add("delete " + asString(key));
+            }
+        };
+        batch.iterate(handler);
+        assertEquals(Arrays.asList("put Tampa=green", "delete NA", "put London=red"), updates);
+
+        // ship the batch and replay it.
+        byte[] rep = batch.toByteArray();
+        batch.close();
+        JniWriteBatch copy = db.createWriteBatch(rep);
+        assertEquals(3, copy.count());
+        updates.clear();
+        copy.iterate(handler);
+        assertEquals(Arrays.asList("put Tampa=green", "delete NA", "put London=red"), updates);
+        db.write(copy);
+        copy.close();
+
+        assertEquals(bytes("green"), db.get(bytes("Tampa")));
+        assertEquals(bytes("red"), db.get(bytes("London")));
+
+        try {
+            db.createWriteBatch(Arrays.copyOf(rep, rep.length - 1));
+            fail("Expected a malformed batch");
+        } catch (IllegalArgumentException expected) {
+        }
+        byte[] miscounted = rep.clone();
+        miscounted[8]++;
+        NativeWriteBatch raw = new NativeWriteBatch();
+        try {
+            raw.setContents(miscounted);
+            fail("Expected a malformed batch");
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            raw.delete();
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void testWriteBatchAppend() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        JniWriteBatch commit = (JniWriteBatch) db.createWriteBatch();
+        JniWriteBatch first = (JniWriteBatch) db.createWriteBatch();
+        first.put(bytes("Tampa"), bytes("green"));
+        JniWriteBatch second = (JniWriteBatch) db.createEncodedWriteBatch();
+        second.put(bytes("London"), bytes("red"));
+        second.delete(bytes("Tampa"));
+
+        commit.append(first).append(second);
+        assertEquals(3, commit.count());
+        first.close();
+        second.close();
+
+        JniWriteBatch encoded = (JniWriteBatch) db.createEncodedWriteBatch();
+        encoded.put(bytes("New York"), bytes("blue"));
+        encoded.append(commit);
+        assertEquals(4, encoded.count());
+        commit.close();
+
+        db.write(encoded);
+        encoded.close();
+
+        assertNull(db.get(bytes("Tampa")));
+        assertEquals(bytes("red"), db.get(bytes("London")));
+        assertEquals(bytes("blue"), db.get(bytes("New York")));
+
+        db.close();
+    }
+
+    @Test
+    public void testDeleteRange() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        byte[] value = new byte[10];
+        for (int i = 0; i < 3000; i++) {
+            db.put(bytes(String.format("a%05d", i)), value);
+            db.put(bytes(String.format("b%05d", i)), value);
+        }
+        db.put(bytes("c"), value);
+
+        final ArrayList<Long> progress = new ArrayList<Long>();
+        long deleted = db.deleteRange(bytes("b"), bytes("c"), new WriteOptions(), true, new JniDB.DeleteRangeListener() {
+            public void onProgress(long deleted) {
+                progress.add(deleted);
+            }
+        });
+        assertEquals(3000, deleted);
+        assertEquals(Long.valueOf(3000), progress.get(progress.size() - 1));
+
+        assertNotNull(db.get(bytes("a02999")));
+        assertNull(db.get(bytes("b00000")));
+        assertNull(db.get(bytes("b02999")));
+        assertNotNull(db.get(bytes("c")));
+
+        // a small batch size makes every write resume from the next key.
+        progress.clear();
+        deleted = db.deleteRange(bytes("a"), bytes("b"), new WriteOptions(), 600, false, new JniDB.DeleteRangeListener() {
+            public void onProgress(long deleted) {
+                progress.add(deleted);
+            }
+        });
+        assertEquals(3000, deleted);
+        assertEquals(30, progress.size());
+        assertEquals(Long.valueOf(100), progress.get(0));
+        assertNull(db.get(bytes("a00000")));
+        assertNull(db.get(bytes("a02999")));
+
+        try {
+            db.deleteRange(null, null, new WriteOptions(), 0, false, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+
+        assertEquals(1, db.deleteRange(null, null));
+        assertNull(db.get(bytes("c")));
+
+        db.close();
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        final JniDB db = (JniDB) factory.open(path, options);
+
+        final byte[] counter = bytes("counter");
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        db.addAndGet(counter, 1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, UpdateOperator.decode(db.get(counter)));
+
+        // plain puts and batch writes wait for the key's lock, so they
+        // can't slip in between the read and write of a locked update.
+        final Thread[] writers = new Thread[2];
+        byte[] remapped = db.computeIfPresent(counter, new JniDB.Remapper() {
+            public byte[] apply(byte[] key, byte[] value) {
+                writers[0] = new Thread() {
+                    public void run() {
+                        db.put(counter, bytes("put"));
+                    }
+                };
+                writers[1] = new Thread() {
+                    public void run() {
+                        WriteBatch batch = db.createWriteBatch();
+                        batch.put(bytes("other"), bytes("batch"));
+                        batch.put(counter, bytes("batch"));
+                        db.write(batch);
+                    }
+                };
+                for (Thread writer : writers) {
+                    writer.start();
+                }
+                try {
+                    for (Thread writer : writers) {
+                        writer.join(100);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                assertTrue(writers[0].isAlive());
+                assertTrue(writers[1].isAlive());
+                assertNull(db.get(bytes("other")));
+                return bytes("remapped");
+            }
+        });
+        assertEquals(bytes("remapped"), remapped);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(bytes("batch"), db.get(bytes("other")));
+        assertFalse(Arrays.equals(bytes("remapped"), db.get(counter)));
+
+        byte[] key = bytes("max");
+        db.update(key, UpdateOperator.encode(5), UpdateOperator.MAX);
+        db.update(key, UpdateOperator.encode(3), UpdateOperator.MAX);
+        assertEquals(5, UpdateOperator.decode(db.get(key)));
+        db.update(key, UpdateOperator.encode(-2), UpdateOperator.MIN);
+        assertEquals(-2, UpdateOperator.decode(db.get(key)));
+
+        key = bytes("log");
+        db.update(key, bytes("a"), UpdateOperator.APPEND);
+        assertEquals(bytes("ab"), db.update(key, bytes("b"), UpdateOperator.APPEND));
+
+        try {
+            db.update(bytes("log"), UpdateOperator.encode(1), UpdateOperator.ADD);
+            fail("Expected the update to fail on a non int64 value");
+        } catch (DBException expected) {
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void testConditionalWrites() throws Exception {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        final JniDB db = (JniDB) factory.open(path, options);
+
+        assertTrue(db.putIfAbsent(bytes("Tampa"), bytes("green")));
+        assertFalse(db.putIfAbsent(bytes("Tampa"), bytes("red")));
+        assertFalse(db.compareAndSet(bytes("Tampa"), bytes("red"), bytes("blue")));
+        assertTrue(db.compareAndSet(bytes("Tampa"), bytes("green"), bytes("blue")));
+        assertEquals(bytes("blue"), db.get(bytes("Tampa")));
+
+        assertEquals(bytes("blue!"), db.computeIfPresent(bytes("Tampa"), new JniDB.Remapper() {
+            public byte[] apply(byte[] key, byte[] value) {
+                return bytes(asString(value) + "!");
+            }
+        }));
+        assertNull(db.computeIfPresent(bytes("London"), new JniDB.Remapper() {
+            public byte[] apply(byte[] key, byte[] value) {
+                fail("Not present");
+                return null;
+            }
+        }));
+
+        byte[][] keys = new byte[][]{bytes("a"), bytes("b")};
+        assertTrue(db.putAllIfAbsent(keys, new byte[][]{bytes("1"), bytes("2")}));
+        assertFalse(db.putAllIfAbsent(new byte[][]{bytes("b"), bytes("c")}, new byte[][]{bytes("3"), bytes("4")}));
+        assertNull(db.get(bytes("c")));
+        assertTrue(db.compareAndSetAll(keys, new byte[][]{bytes("1"), bytes("2")}, new byte[][]{null, bytes("3")}));
+        assertNull(db.get(bytes("a")));
+        assertEquals(bytes("3"), db.get(bytes("b")));
+
+        // concurrent increments through compareAndSet never lose an update.
+        final int threadCount = 4;
+        final int increments = 500;
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < increments; j++) {
+                        while (true) {
+                            byte[] current = db.get(bytes("counter"));
+                            int next = current == null ? 1 : Integer.parseInt(asString(current)) + 1;
+                            if (db.compareAndSet(bytes("counter"), current, bytes(Integer.toString(next)))) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(bytes(Integer.toString(threadCount * increments)), db.get(bytes("counter")));
+
+        db.close();
+    }
+
+    @Test
+    public void testOptimisticTransaction() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        db.put(bytes("Tampa"), bytes("green"));
+
+        OptimisticTransaction tx1 = db.beginTransaction();
+        OptimisticTransaction tx2 = db.beginTransaction();
+        assertEquals(bytes("green"), tx1.get(bytes("Tampa")));
+        tx1.put(bytes("Tampa"), bytes("red"));
+        assertEquals(bytes("red"), tx1.get(bytes("Tampa")));
+        assertEquals(bytes("green"), tx2.get(bytes("Tampa")));
+        tx2.put(bytes("Tampa"), bytes("blue"));
+
+        tx1.commit();
+        assertFalse(tx1.isActive());
+        try {
+            tx2.commit();
+            fail("Expected a conflict");
+        } catch (ConflictException expected) {
+        }
+        assertEquals(bytes("red"), db.get(bytes("Tampa")));
+
+        // disjoint transactions both commit.
+        tx1 = db.beginTransaction();
+        tx2 = db.beginTransaction();
+        tx1.put(bytes("London"), bytes("red"));
+        tx2.delete(bytes("Tampa"));
+        tx1.commit();
+        tx2.commit();
+        assertEquals(bytes("red"), db.get(bytes("London")));
+        assertNull(db.get(bytes("Tampa")));
+
+        tx1 = db.beginTransaction();
+        tx1.put(bytes("New York"), bytes("blue"));
+        tx1.rollback();
+        assertNull(db.get(bytes("New York")));
+
+        db.close();
+    }
+
+    @Test
+    public void testOptimisticTransactionContention() throws Exception {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        final JniDB db = (JniDB) factory.open(path, options);
+
+        final int accounts = 64;
+        for (int i = 0; i < accounts; i++) {
+            db.put(bytes("account" + i), UpdateOperator.encode(1000));
+        }
+
+        for (int threadCount = 1; threadCount <= 8; threadCount *= 2) {
+            final AtomicLong commits = new AtomicLong();
+            final AtomicLong aborts = new AtomicLong();
+            Thread[] threads = new Thread[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                threads[i] = new Thread() {
+                    public void run() {
+                        Random random = new Random();
+                        for (int j = 0; j < 500; j++) {
+                            byte[] from = bytes("account" + random.nextInt(accounts));
+                            byte[] to = bytes("account" + random.nextInt(accounts));
+                            if (Arrays.equals(from, to)) {
+                                continue;
+                            }
+                            while (true) {
+                                OptimisticTransaction tx = db.beginTransaction();
+                                try {
+                                    tx.put(from, UpdateOperator.encode(UpdateOperator.decode(tx.get(from)) - 1));
+                                    tx.put(to, UpdateOperator.encode(UpdateOperator.decode(tx.get(to)) + 1));
+                                    tx.commit();
+                                    commits.incrementAndGet();
+                                    break;
+                                } catch (ConflictException e) {
+                                    aborts.incrementAndGet();
+                                }
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(commits.get() > 0);
+        }
+
+        long total = 0;
+        for (int i = 0; i < accounts; i++) {
+            total += UpdateOperator.decode(db.get(bytes("account" + i)));
+        }
+        assertEquals(accounts * 1000, total);
+
+        db.close();
+    }
+
+    @Test
+    public void testBatchedIteration() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        DB db = factory.open(path, options);
+
+        for (int i = 0; i < 5000; i++) {
+            byte[] value = new byte[i == 2500 ? 100 * 1024 : i % 100];
+            db.put(bytes(String.format("key%05d", i)), value);
+        }
+
+        DBIterator it = db.iterator();
+        it.seekToFirst();
+        int count = 0;
+        while (it.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = it.next();
+            assertEquals(String.format("key%05d", count), asString(entry.getKey()));
+            assertEquals(count == 2500 ? 100 * 1024 : count % 100, entry.getValue().length);
+            count++;
+        }
+        assertEquals(5000, count);
+
+        // reverse moves start from the logical position even while
+        // entries are buffered.
+        it.seek(bytes("key01000"));
+        assertEquals("key01000", asString(it.next().getKey()));
+        assertEquals("key01001", asString(it.peekNext().getKey()));
+        assertEquals("key01000", asString(it.peekPrev().getKey()));
+        assertEquals("key01000", asString(it.prev().getKey()));
+        assertEquals("key01000", asString(it.next().getKey()));
+        assertEquals("key01001", asString(it.next().getKey()));
+        it.close();
+
+        // short lived lookups free their batch buffer on close.
+        for (int i = 0; i < 1000; i++) {
+            it = db.iterator();
+            it.seek(bytes(String.format("key%05d", i)));
+            assertTrue(it.hasNext());
+            assertEquals(String.format("key%05d", i), asString(it.next().getKey()));
+            it.close();
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void testKeysOnlyIteration() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        for (int i = 0; i < 100; i++) {
+            db.put(bytes(String.format("key%03d", i)), new byte[i * 10]);
+        }
+
+        JniDBIterator it = db.iterator(new ReadOptions(), NativeIterator.Mode.KEYS_ONLY);
+        it.seekToFirst();
+        int count = 0;
+        while (it.hasNext()) {
+            JniDBIterator.Entry entry = (JniDBIterator.Entry) it.next();
+            assertEquals(String.format("key%03d", count), asString(entry.getKey()));
+            assertNull(entry.getValue());
+            assertEquals(-1, entry.valueLength());
+            count++;
+        }
+        assertEquals(100, count);
+        it.close();
+
+        it = db.iterator(new ReadOptions(), NativeIterator.Mode.VALUE_LENGTHS);
+        it.seek(bytes("key050"));
+        JniDBIterator.Entry entry = (JniDBIterator.Entry) it.next();
+        assertEquals("key050", asString(entry.getKey()));
+        assertNull(entry.getValue());
+        assertEquals(500, entry.valueLength());
+        entry = (JniDBIterator.Entry) it.prev();
+        assertEquals("key050", asString(entry.getKey()));
+        assertEquals(500, entry.valueLength());
+        it.close();
+
+        db.close();
+    }
+
+    @Test
+    public void testBoundedIterators() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        for (String key : new String[]{"a", "b1", "b2", "b3", "c", "d"}) {
+            db.put(bytes(key), bytes(key));
+        }
+
+        JniDBIterator it = db.iterator(new ReadOptions(), bytes("b2"), bytes("d"));
+        it.seekToFirst();
+        ArrayList<String> keys = new ArrayList<String>();
+        while (it.hasNext()) {
+            keys.add(asString(it.next().getKey()));
+        }
+        assertEquals(Arrays.asList("b2", "b3", "c"), keys);
+        it.seekToLast();
+        assertEquals("c", asString(it.peekNext().getKey()));
+        it.seek(bytes("a"));
+        assertEquals("b2", asString(it.peekNext().getKey()));
+        assertFalse(it.hasPrev());
+        it.close();
+
+        it = db.prefixIterator(bytes("b"));
+        it.seekToFirst();
+        keys.clear();
+        while (it.hasNext()) {
+            keys.add(asString(it.next().getKey()));
+        }
+        assertEquals(Arrays.asList("b1", "b2", "b3"), keys);
+        it.close();
+
+        it = db.prefixIterator(bytes("x"));
+        it.seekToFirst();
+        assertFalse(it.hasNext());
+        it.close();
+
+        db.close();
+    }
+
+    @Test
+    public void testNativeIteratorAccess() throws IOException {
+        File path = getTestDirectory(getName());
+        NativeDB db = NativeDB.open(new NativeOptions().createIfMissing(true), path);
+        NativeWriteOptions writeOptions = new NativeWriteOptions();
+        for (int i = 0; i < 100000; i++) {
+            db.put(writeOptions, bytes(String.format("key%06d", i)), new byte[16]);
+        }
+
+        long allocated = 0;
+        long count = 0;
+        for (int round = 0; round < 3; round++) {
+            NativeIterator it = db.iterator(new NativeReadOptions());
+            long before = allocatedBytes();
+            count = 0;
+            it.seekToFirst();
+            while (it.isValid()) {
+                if (it.key().length != 9 || it.value().length != 16) {
+                    fail("unexpected entry size");
+                }
+                it.next();
+                count++;
+            }
+            allocated = before < 0 ? -1 : allocatedBytes() - before;
+            it.delete();
+            assertEquals(100000, count);
+        }
+
+        // Only the returned key and value arrays may be allocated, no
+        // slice or status wrappers.  Two arrays this small take at most
+        // 80 bytes even without compressed headers.
+        if (allocated >= 0) {
+            assertTrue("allocated " + (allocated / count) + " bytes per entry", allocated / count <= 80);
+        }
+
+        db.delete();
+    }
+
+    /**
+     * @return the bytes the current thread allocated so far, or -1 if the
+     *         jvm can't tell.
+     */
+    private static long allocatedBytes() {
+        try {
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            Object bean = ManagementFactory.getThreadMXBean();
+            if (!type.isInstance(bean)) {
+                return -1;
+            }
+            Method method = type.getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(bean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Test
+    public void testCursor() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        for (int i = 0; i < 3000; i++) {
+            db.put(bytes(String.format("key%05d", i)), bytes(String.format("value%05d", i)));
+        }
+
+        byte[] key = new byte[64];
+        byte[] value = new byte[64];
+        DBCursor cursor = db.cursor();
+        cursor.seekToFirst();
+        int count = 0;
+        while (cursor.advance()) {
+            int keyLength = cursor.copyKeyTo(key);
+            int valueLength = cursor.copyValueTo(value);
+            assertEquals(String.format("key%05d", count), new String(key, 0, keyLength));
+            assertEquals(String.format("value%05d", count), new String(value, 0, valueLength));
+            count++;
+        }
+        assertEquals(3000, count);
+
+        cursor.seek(bytes("key01500"));
+        assertTrue(cursor.advance());
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(8, cursor.copyKeyTo(buffer));
+        buffer.flip();
+        assertEquals(bytes("key01500"), Arrays.copyOf(buffer.array(), buffer.limit()));
+        cursor.close();
+
+        cursor = db.cursor(new ReadOptions(), bytes("key00010"), bytes("key00020"), NativeIterator.Mode.KEYS_ONLY);
+        cursor.seekToFirst();
+        count = 0;
+        while (cursor.advance()) {
+            assertEquals(-1, cursor.valueLength());
+            count++;
+        }
+        assertEquals(10, count);
+        cursor.seekToFirst();
+        assertTrue(cursor.advance());
+        try {
+            cursor.copyValueTo(value);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        cursor.close();
+
+        db.close();
+    }
+
+    @Test
+    public void testDescendingIteration() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        for (int i = 0; i < 1000; i++) {
+            db.put(bytes(String.format("event%04d", i * 2)), bytes(Integer.toString(i * 2)));
+        }
+
+        JniDBIterator it = db.descendingIterator();
+        it.seekToFirst();
+        int expected = 1998;
+        while (it.hasNext()) {
+            assertEquals(String.format("event%04d", expected), asString(it.next().getKey()));
+            expected -= 2;
+        }
+        assertEquals(-2, expected);
+
+        // newest first, starting at or before a point in time.
+        it.seek(bytes("event1001"));
+        assertEquals("event1000", asString(it.next().getKey()));
+        assertEquals("event0998", asString(it.next().getKey()));
+        it.seek(bytes("event1000"));
+        assertEquals("event1000", asString(it.next().getKey()));
+        it.seek(bytes("event"));
+        assertFalse(it.hasNext());
+        it.seek(bytes("event9999"));
+        assertEquals("event1998", asString(it.next().getKey()));
+        it.close();
+
+        it = (JniDBIterator) db.iterator();
+        it.seekForPrev(bytes("event0003"));
+        assertEquals("event0002", asString(it.next().getKey()));
+        assertEquals("event0004", asString(it.next().getKey()));
+        it.close();
+
+        byte[] key = new byte[16];
+        DBCursor cursor = db.reverseCursor(new ReadOptions());
+        cursor.seek(bytes("event0005"));
+        assertTrue(cursor.advance());
+        assertEquals("event0004", new String(key, 0, cursor.copyKeyTo(key)));
+        assertTrue(cursor.advance());
+        assertTrue(cursor.advance());
+        assertEquals("event0000", new String(key, 0, cursor.copyKeyTo(key)));
+        assertFalse(cursor.advance());
+        cursor.close();
+
+        db.close();
+    }
+
+    @Test
+    public void testParallelScan() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        final JniDB db = (JniDB) factory.open(path, options);
+
+        byte[] value = new byte[100];
+        for (int i = 0; i < 20000; i++) {
+            db.put(bytes(String.format("key%06d", i)), value);
+        }
+        db.compactRange(null, null);
+
+        List<byte[]> boundaries = db.splitRange(null, null, 4);
+        assertNull(boundaries.get(0));
+        assertNull(boundaries.get(boundaries.size() - 1));
+        assertTrue(boundaries.size() > 2);
+
+        final AtomicLong entries = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            db.parallelScan(null, null, null, 4, executor, new ParallelScan.Visitor() {
+                public void visit(int split, DBCursor cursor) {
+                    byte[] key = new byte[16];
+                    byte[] previous = null;
+                    while (cursor.advance()) {
+                        int length = cursor.copyKeyTo(key);
+                        byte[] current = Arrays.copyOf(key, length);
+                        if (previous != null) {
+                            assertTrue(asString(previous).compareTo(asString(current)) < 0);
+                        }
+                        previous = current;
+                        entries.incrementAndGet();
+                        bytes.addAndGet(cursor.valueLength());
+                    }
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(20000, entries.get());
+        assertEquals(20000 * 100, bytes.get());
+
+        db.close();
+    }
+
+    @Test
+    public void testParallelScanCustomComparator() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true).comparator(byteComparator);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+        db.put(newKey((byte) 1), getData());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            db.parallelScan(new ReadOptions(), null, null, 2, executor, new ParallelScan.Visitor() {
+                public void visit(int split, DBCursor cursor) {
+                    fail("A custom comparator db must not be scanned");
+                }
+            });
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        } finally {
+            executor.shutdown();
+        }
+        db.close();
+    }
+
+    @Test
+    public void testSplitRange() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true).compressionType(CompressionType.NONE);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        byte[] value = new byte[1000];
+        for (int i = 0; i < 10000; i++) {
+            db.put(bytes(String.format("key%06d", i)), value);
+        }
+        db.compactRange(null, null);
+
+        byte[] lower = bytes("key001000");
+        byte[] upper = bytes("key009000");
+        List<byte[]> boundaries = db.splitRange(lower, upper, 4);
+        assertEquals(5, boundaries.size());
+        assertEquals(lower, boundaries.get(0));
+        assertEquals(upper, boundaries.get(4));
+
+        long[] sizes = new long[4];
+        for (int i = 0; i < 4; i++) {
+            assertTrue(asString(boundaries.get(i)).compareTo(asString(boundaries.get(i + 1))) < 0);
+            sizes[i] = db.getApproximateSizes(new Range(boundaries.get(i), boundaries.get(i + 1)))[0];
+        }
+        long total = db.getApproximateSizes(new Range(lower, upper))[0];
+        for (long size : sizes) {
+            assertTrue("unbalanced split: " + Arrays.toString(sizes), size > total / 8 && size < total / 2);
+        }
+
+        assertEquals(2, db.splitRange(bytes("x"), bytes("z"), 4).size());
+        db.close();
+
+        // byte wise split keys don't follow a custom key order.
+        options = new Options().createIfMissing(true).comparator(byteComparator);
+        db = (JniDB) factory.open(getTestDirectory(getName() + "-custom"), options);
+        try {
+            db.splitRange(null, null, 4);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        db.close();
+    }
+
+    @Test
+    public void testAggregate() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        JniDB db = (JniDB) factory.open(path, options);
+
+        for (int i = 0; i < 100; i++) {
+            db.put(bytes(String.format("a%03d", i)), new byte[i]);
+            db.put(bytes(String.format("b%03d", i)), new byte[1]);
+        }
+
+        AggregateResult result = db.aggregate(bytes("a"), bytes("b"), new AggregateSpec());
+        assertEquals(100, result.count());
+        assertEquals(400, result.keyBytes());
+        assertEquals(4950, result.valueBytes());
+        assertEquals(bytes("a000"), result.firstKey());
+        assertEquals(bytes("a099"), result.lastKey());
+
+        result = db.aggregate(bytes("a050"), null, new AggregateSpec().valueBytes(false).boundaryKeys(false));
+        assertEquals(150, result.count());
+        assertEquals(-1, result.valueBytes());
+        assertNull(result.firstKey());
+
+        result = db.aggregate(null, null, new AggregateSpec());
+        assertEquals(200, result.count());
+        assertEquals(bytes("b099"), result.lastKey());
+
+        result = db.aggregate(bytes("c"), bytes("d"), new AggregateSpec());
+        assertEquals(0, result.count());
+        assertNull(result.firstKey());
+        assertNull(result.lastKey());
+
+        db.close();
+    }
+
+    @Test
+    public void testBulkLoader() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        final int[] progress = new int[1];
+        BulkLoader loader = ((JniDBFactory) factory).openBulkLoader(path, options, 1024 * 1024);
+        loader.progressListener(new BulkLoader.ProgressListener() {
+            public void onProgress(BulkLoader loader) {
+                progress[0]++;
+            }
+        });
+
+        byte[] value = new byte[100];
+        for (int i = 0; i < 100000; i++) {
+            loader.put(bytes(String.format("key%08d", i)), value);
+        }
+        assertEquals(100000, loader.count());
+        JniDB db = loader.finish(true);
+        assertTrue(progress[0] > 0);
+
+        assertEquals(value, db.get(bytes("key00000000")));
+        assertEquals(value, db.get(bytes("key00099999")));
+        assertNull(db.get(bytes("key00100000")));
+        db.put(bytes("after"), bytes("load"));
+        assertEquals(bytes("load"), db.get(bytes("after")));
+
+        db.close();
+    }
+
+    @Test
+    public void testBulkLoaderReusedKeys() throws IOException, DBException {
+        Options options = new Options().createIfMissing(true);
+        File path = getTestDirectory(getName());
+        BulkLoader loader = ((JniDBFactory) factory).openBulkLoader(path, options, 1024 * 1024);
+
+        // the loader must not keep references to the caller's key array.
+        byte[] key = new byte[11];
+        byte[] value = new byte[100];
+        for (int i = 0; i < 20000; i++) {
+            System.arraycopy(bytes(String.format("key%08d", i)), 0, key, 0, key.length);
+            loader.put(key, value);
+        }
+        Arrays.fill(key, (byte) 0);
+        JniDB db = loader.finish(true);
+        assertEquals(bytes("key00000000"), loader.firstKey());
+        assertEquals(bytes("key00019999"), loader.lastKey());
+        assertEquals(value, db.get(bytes("key00000000")));
+        assertEquals(value, db.get(bytes("key00019999")));
+        db.close();
+    }
+
     @Test
     public void testApproximateSizes() throws IOException, DBException {
         Options options = new Options().createIfMissing(true);
@@ -417,6 +1598,135 @@ public class DBTest extends TestCase {
         db.close();
     }
 
+    @Test
+    public void testBloomFilter() throws IOException, DBException {
+        assertFalse(hasBloomFilterBlocks(new JniOptions()));
+        assertTrue(hasBloomFilterBlocks(new JniOptions().bloomFilterBitsPerKey(10)));
+    }
+
+    @Test
+    public void testPrefixBloomFilter() throws IOException, DBException {
+        JniOptions options = new JniOptions();
+        options.bloomFilterBitsPerKey(10).prefixFilterDelimiter((byte) '|').createIfMissing(true);
+        File path = getTestDirectory(getName());
+
+        // every reopen flushes the memtable, so each tenant group and the
+        // deletes end up in their own tables.
+        JniDB db = (JniDB) factory.open(path, options);
+        for (int i = 0; i < 1000; i++) {
+            db.put(bytes("tenant" + (i % 5) + "|entity" + i), bytes("value" + i));
+        }
+        db.close();
+        db = (JniDB) factory.open(path, options);
+        for (int i = 0; i < 1000; i++) {
+            db.put(bytes("tenant" + (5 + i % 5) + "|entity" + i), bytes("value" + i));
+        }
+        db.close();
+        db = (JniDB) factory.open(path, options);
+        for (int i = 0; i < 1000; i += 10) {
+            db.delete(bytes("tenant" + (i % 5) + "|entity" + i));
+        }
+        db.close();
+        db = (JniDB) factory.open(path, options);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 10 == 0 ? null : bytes("value" + i), db.get(bytes("tenant" + (i % 5) + "|entity" + i)));
+            assertNull(db.get(bytes("tenant" + (i % 5) + "|missing" + i)));
+            assertNull(db.get(bytes("other" + i + "|entity" + i)));
+        }
+
+        assertEquals(100, count(db.prefixIterator(bytes("tenant0|"))));
+        assertEquals(200, count(db.prefixIterator(bytes("tenant7|"))));
+        assertEquals(0, count(db.prefixIterator(bytes("tenant10|"))));
+        assertEquals(0, count(db.prefixIterator(bytes("other|"))));
+        // longer prefixes probe the filter with their part up to the
+        // delimiter, shorter ones scan without the filter.
+        assertEquals(1, count(db.prefixIterator(bytes("tenant7|entity997"))));
+        assertEquals(0, count(db.prefixIterator(bytes("tenant0|entity0"))));
+        assertEquals(1900, count(db.prefixIterator(bytes("tenant"))));
+
+        DBIterator it = db.prefixIterator(bytes("tenant3|"));
+        it.seekToLast();
+        assertEquals(bytes("tenant3|entity998"), it.peekNext().getKey());
+        it.close();
+        db.close();
+    }
+
+    private static int count(DBIterator it) throws IOException {
+        int rc = 0;
+        try {
+            for (it.seekToFirst(); it.hasNext(); it.next()) {
+                rc++;
+            }
+        } finally {
+            it.close();
+        }
+        return rc;
+    }
+
+    /**
+     * Fills a db, checks that hits and misses read back correctly and
+     * tells if its tables carry bloom filter blocks.
+     */
+    private boolean hasBloomFilterBlocks(JniOptions options) throws IOException, DBException {
+        options.createIfMissing(true);
+        options.compressionType(CompressionType.NONE);
+        File path = getTestDirectory(getName() + "-" + options.bloomFilterBitsPerKey());
+        DB db = factory.open(path, options);
+        try {
+            byte[] data = new byte[100];
+            for (int i = 0; i < 10000; i++) {
+                db.put(bytes("row" + (i * 2)), data);
+            }
+            ((JniDB) db).compactRange(null, null);
+
+            for (int i = 0; i < 10000; i++) {
+                assertEquals(data, db.get(bytes("row" + (i * 2))));
+                assertNull(db.get(bytes("row" + (i * 2 + 1))));
+            }
+        } finally {
+            db.close();
+        }
+
+        // the metaindex block of a table names its filter policy.
+        byte[] name = bytes("filter.leveldb.BuiltinBloomFilter");
+        boolean found = false;
+        for (File file : path.listFiles()) {
+            if (file.getName().endsWith(".sst") || file.getName().endsWith(".ldb")) {
+                byte[] contents = readFile(file);
+                if (indexOf(contents, name) < 0) {
+                    return false;
+                }
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] rc = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(rc);
+        } finally {
+            in.close();
+        }
+        return rc;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
     @Test
     public void testSuspendAndResumeCompactions() throws Exception {
         Options options = new Options().createIfMissing(true);